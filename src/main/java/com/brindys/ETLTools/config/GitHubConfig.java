@@ -1,12 +1,18 @@
 package com.brindys.ETLTools.config;
 
+import com.brindys.ETLTools.support.github.CachingGitHubConnector;
+import com.brindys.ETLTools.support.github.GitHubLimitHandlers;
+import com.brindys.ETLTools.support.github.fake.FakeGitHubServer;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.extras.HttpClientGitHubConnector;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
+import java.nio.file.Path;
 
 @Configuration
 public class GitHubConfig {
@@ -23,13 +29,61 @@ public class GitHubConfig {
   @Value("${github.branch:main}")
   private String branch;
 
+  @Value("${github.api-url:https://api.github.com}")
+  private String apiUrl;
+
+  @Value("${github.cache.dir:github-cache}")
+  private String cacheDir;
+
+  @Value("${github.pace-below:500}")
+  private int paceBelow;
+
+  @Value("${github.retries:3}")
+  private int retries;
+
+  @Value("${github.retry-base-ms:500}")
+  private long retryBaseMillis;
+
+  // Set when github.fake.enabled=true; takes the place of apiUrl
+  @Autowired(required = false)
+  private FakeGitHubServer fakeServer;
+
   @Bean
   public GitHub gitHub() throws IOException {
+    return build(getApiUrl(), githubToken, Path.of(cacheDir), paceBelow, retries, retryBaseMillis);
+  }
+
+  /**
+   * Connector for GitHubGraphQLClient, with the same pacing and retries as
+   * the REST client. A separate instance, as GitHub counts GraphQL against
+   * its own quota.
+   */
+  @Bean
+  public CachingGitHubConnector graphQLConnector() throws IOException {
+    return connector(Path.of(cacheDir), paceBelow, retries, retryBaseMillis);
+  }
+
+  /**
+   * A GitHub client with the on-disk cache, pacing and retries of
+   * CachingGitHubConnector. On a 403 for rate or abuse limits it waits for
+   * the reset rather than failing.
+   */
+  public static GitHub build(String apiUrl, String token, Path cacheDir, int paceBelow,
+                             int retries, long retryBaseMillis) throws IOException {
     return new GitHubBuilder()
-        .withOAuthToken(githubToken)
+        .withEndpoint(apiUrl)
+        .withOAuthToken(token)
+        .withConnector(connector(cacheDir, paceBelow, retries, retryBaseMillis))
+        .withRateLimitHandler(new GitHubLimitHandlers.RateLimit())
+        .withAbuseLimitHandler(new GitHubLimitHandlers.AbuseLimit())
         .build();
   }
 
+  private static CachingGitHubConnector connector(Path cacheDir, int paceBelow, int retries,
+                                                  long retryBaseMillis) throws IOException {
+    return new CachingGitHubConnector(new HttpClientGitHubConnector(), cacheDir, paceBelow, retries, retryBaseMillis);
+  }
+
   // Getters for other services to use
   public String getRepoOwner() {
     return repoOwner;
@@ -46,4 +100,8 @@ public class GitHubConfig {
   public String getFullRepoPath() {
     return repoOwner + "/" + repoName;
   }
-}
\ No newline at end of file
+
+  public String getApiUrl() {
+    return fakeServer != null ? fakeServer.getUrl() : apiUrl;
+  }
+}
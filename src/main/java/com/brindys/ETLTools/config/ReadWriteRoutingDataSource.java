@@ -0,0 +1,29 @@
+package com.brindys.ETLTools.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the reader pool and everything else to
+ * the writer. Must sit behind a LazyConnectionDataSourceProxy, since the
+ * read-only flag is only known once the transaction has started.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+  private static final String WRITER = "writer";
+  private static final String READER = "reader";
+
+  public ReadWriteRoutingDataSource(DataSource writer, DataSource reader) {
+    setTargetDataSources(Map.of(WRITER, writer, READER, reader));
+    setDefaultTargetDataSource(writer);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READER : WRITER;
+  }
+}
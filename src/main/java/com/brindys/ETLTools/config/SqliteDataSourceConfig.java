@@ -0,0 +1,79 @@
+package com.brindys.ETLTools.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * SQLite storage for the mapping tables. The database runs in WAL mode so
+ * readers are not blocked by a writer, with a one-connection writer pool
+ * (SQLite only ever allows one writer, so more connections would just
+ * queue on the file lock) and a separate pool of query-only connections
+ * for read-only transactions.
+ */
+@Configuration
+public class SqliteDataSourceConfig {
+
+  @Value("${spring.datasource.url}")
+  private String url;
+
+  @Value("${sqlite.journal-mode:WAL}")
+  private String journalMode;
+
+  @Value("${sqlite.synchronous:NORMAL}")
+  private String synchronous;
+
+  @Value("${sqlite.busy-timeout-ms:5000}")
+  private int busyTimeoutMs;
+
+  @Value("${sqlite.reader-pool-size:4}")
+  private int readerPoolSize;
+
+  @Bean(destroyMethod = "close")
+  public HikariDataSource sqliteWriterDataSource() {
+    return createPool("sqlite-writer", url, 1, false, journalMode, synchronous, busyTimeoutMs);
+  }
+
+  @Bean(destroyMethod = "close")
+  public HikariDataSource sqliteReaderDataSource() {
+    return createPool("sqlite-reader", url, readerPoolSize, true, journalMode, synchronous, busyTimeoutMs);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(@Qualifier("sqliteWriterDataSource") DataSource writer,
+                               @Qualifier("sqliteReaderDataSource") DataSource reader) {
+    return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(writer, reader));
+  }
+
+  /**
+   * A Hikari pool over one SQLite file with the given pragmas applied to
+   * every connection
+   */
+  public static HikariDataSource createPool(String name, String url, int size, boolean queryOnly,
+                                            String journalMode, String synchronous, int busyTimeoutMs) {
+    HikariConfig config = new HikariConfig();
+    config.setPoolName(name);
+    config.setJdbcUrl(url);
+    config.setDriverClassName("org.sqlite.JDBC");
+    config.setMaximumPoolSize(size);
+    config.setMinimumIdle(1);
+    // Connections to a local file never go stale
+    config.setMaxLifetime(0);
+    config.setIdleTimeout(0);
+    config.addDataSourceProperty("journal_mode", journalMode);
+    config.addDataSourceProperty("synchronous", synchronous);
+    config.addDataSourceProperty("busy_timeout", String.valueOf(busyTimeoutMs));
+    if (queryOnly) {
+      config.setConnectionInitSql("PRAGMA query_only = 1");
+    }
+    return new HikariDataSource(config);
+  }
+}
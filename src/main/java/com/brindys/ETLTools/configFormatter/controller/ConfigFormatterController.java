@@ -1,24 +1,118 @@
 package com.brindys.ETLTools.configFormatter.controller;
 
+import com.brindys.ETLTools.configFormatter.model.FormatRangeRequest;
+import com.brindys.ETLTools.configFormatter.model.TextEdit;
 import com.brindys.ETLTools.configFormatter.service.ConfigFormatterService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/config-formatter")
 public class ConfigFormatterController {
 
+  private static final long IN_MEMORY_LIMIT = 4 * 1024 * 1024;
+
   @Autowired
   private ConfigFormatterService formatterService;
 
+  /**
+   * Configs up to IN_MEMORY_LIMIT are formatted in one go, so an already
+   * formatted config can be answered with 304. Anything bigger (or sent
+   * without a Content-Length) is formatted block by block straight from the
+   * request into the response.
+   */
   @PostMapping("/format")
-  public ResponseEntity<String> formatConfig(@RequestBody String config) {
+  public ResponseEntity<StreamingResponseBody> formatConfig(HttpServletRequest request) {
+    Charset charset = request.getCharacterEncoding() != null
+        ? Charset.forName(request.getCharacterEncoding())
+        : StandardCharsets.UTF_8;
+
+    try {
+      long length = request.getContentLengthLong();
+      if (length >= 0 && length <= IN_MEMORY_LIMIT) {
+        String config = new String(request.getInputStream().readAllBytes(), charset);
+        String formatted = formatterService.formatConfig(config);
+        if (formatterService.isUnchanged(config, formatted)) {
+          // Already formatted - nothing to send back
+          return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        return textResponse(HttpStatus.OK, formatted, charset);
+      }
+
+      Reader reader = new InputStreamReader(request.getInputStream(), charset);
+      StreamingResponseBody body = out -> {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+        formatterService.formatConfig(reader, writer);
+        writer.flush();
+      };
+      return ResponseEntity.ok()
+          .contentType(new MediaType(MediaType.TEXT_PLAIN, charset))
+          .body(body);
+    } catch (Exception e) {
+      return textResponse(HttpStatus.BAD_REQUEST, "Error formatting config: " + e.getMessage(), charset);
+    }
+  }
+
+  private ResponseEntity<StreamingResponseBody> textResponse(HttpStatus status, String text, Charset charset) {
+    byte[] bytes = text.getBytes(charset);
+    return ResponseEntity.status(status)
+        .contentType(new MediaType(MediaType.TEXT_PLAIN, charset))
+        .contentLength(bytes.length)
+        .body(out -> out.write(bytes));
+  }
+
+  /**
+   * Check mode for CI - reports whether the config is formatted, with a
+   * unified diff of what formatting would change
+   */
+  @PostMapping("/check")
+  public ResponseEntity<?> checkConfig(@RequestBody String config,
+                                       @RequestParam(defaultValue = "config.psl") String path) {
+    try {
+      return ResponseEntity.ok(formatterService.checkConfig(config, path));
+    } catch (Exception e) {
+      return ResponseEntity.badRequest().body("Error checking config: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Format only the blocks touching a line (or offset) range and return the
+   * edits for them, instead of the whole config
+   */
+  @PostMapping("/format-range")
+  public ResponseEntity<?> formatRange(@RequestBody FormatRangeRequest request) {
+    if (request.getConfig() == null) {
+      return ResponseEntity.badRequest().body("Config required");
+    }
+
     try {
-      String formatted = formatterService.formatConfig(config);
-      return ResponseEntity.ok(formatted);
+      List<TextEdit> edits;
+      if (request.getStartLine() != null) {
+        int endLine = request.getEndLine() != null ? request.getEndLine() : request.getStartLine();
+        edits = formatterService.formatRange(request.getConfig(), request.getStartLine(), endLine);
+      } else if (request.getStartOffset() != null) {
+        int endOffset = request.getEndOffset() != null ? request.getEndOffset() : request.getStartOffset();
+        edits = formatterService.formatOffsetRange(request.getConfig(), request.getStartOffset(), endOffset);
+      } else {
+        return ResponseEntity.badRequest().body("A line or offset range is required");
+      }
+      return ResponseEntity.ok(edits);
     } catch (Exception e) {
-      return ResponseEntity.badRequest().body("Error formatting config: " + e.getMessage());
+      return ResponseEntity.badRequest().body("Error formatting range: " + e.getMessage());
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.brindys.ETLTools.configFormatter.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line diff using Myers' O(ND) algorithm in its linear-space form: the
+ * "middle snake" of each sub-problem is found by running the search from
+ * both ends at once, and the two halves either side of it are solved
+ * recursively. Memory stays O(N + M) however far apart the inputs are.
+ */
+public class MyersDiff {
+
+  /**
+   * Replace original lines [originalStart, originalEnd) with revised lines
+   * [revisedStart, revisedEnd). Either range may be empty.
+   */
+  public static class Edit {
+    public final int originalStart;
+    public final int originalEnd;
+    public final int revisedStart;
+    public final int revisedEnd;
+
+    Edit(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+      this.originalStart = originalStart;
+      this.originalEnd = originalEnd;
+      this.revisedStart = revisedStart;
+      this.revisedEnd = revisedEnd;
+    }
+  }
+
+  private final int[] a;
+  private final int[] b;
+  private final List<Edit> edits = new ArrayList<>();
+
+  private MyersDiff(int[] a, int[] b) {
+    this.a = a;
+    this.b = b;
+  }
+
+  /**
+   * Minimal list of edits turning original into revised, in order
+   */
+  public static List<Edit> diff(List<String> original, List<String> revised) {
+    // Compare lines by id rather than by string
+    Map<String, Integer> ids = new HashMap<>();
+    int[] a = new int[original.size()];
+    int[] b = new int[revised.size()];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = ids.computeIfAbsent(original.get(i), line -> ids.size());
+    }
+    for (int i = 0; i < b.length; i++) {
+      b[i] = ids.computeIfAbsent(revised.get(i), line -> ids.size());
+    }
+
+    MyersDiff diff = new MyersDiff(a, b);
+    diff.compare(0, a.length, 0, b.length);
+    return diff.edits;
+  }
+
+  private void compare(int aLo, int aHi, int bLo, int bHi) {
+    while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+      aLo++;
+      bLo++;
+    }
+    while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+      aHi--;
+      bHi--;
+    }
+
+    if (aLo == aHi || bLo == bHi) {
+      if (aLo < aHi || bLo < bHi) {
+        addEdit(aLo, aHi, bLo, bHi);
+      }
+      return;
+    }
+
+    int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+    compare(aLo, snake[0], bLo, snake[1]);
+    compare(snake[2], aHi, snake[3], bHi);
+  }
+
+  /**
+   * Returns {x, y, u, v}: the middle snake runs from (x, y) to (u, v)
+   */
+  private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+    int n = aHi - aLo;
+    int m = bHi - bLo;
+    int delta = n - m;
+    boolean odd = (delta & 1) != 0;
+    int max = (n + m + 1) / 2;
+    int offset = max + 1;
+
+    int[] forward = new int[2 * max + 3];
+    int[] backward = new int[2 * max + 3];
+
+    for (int d = 0; d <= max; d++) {
+      for (int k = -d; k <= d; k += 2) {
+        int x = (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+            ? forward[offset + k + 1]
+            : forward[offset + k - 1] + 1;
+        int y = x - k;
+        int startX = x;
+        int startY = y;
+        while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+          x++;
+          y++;
+        }
+        forward[offset + k] = x;
+
+        int backK = delta - k;
+        if (odd && backK >= -(d - 1) && backK <= d - 1 && x + backward[offset + backK] >= n) {
+          return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+        }
+      }
+
+      for (int k = -d; k <= d; k += 2) {
+        int x = (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+            ? backward[offset + k + 1]
+            : backward[offset + k - 1] + 1;
+        int y = x - k;
+        int startX = x;
+        int startY = y;
+        while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+          x++;
+          y++;
+        }
+        backward[offset + k] = x;
+
+        int forwardK = delta - k;
+        if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+          return new int[]{aHi - x, bHi - y, aHi - startX, bHi - startY};
+        }
+      }
+    }
+
+    throw new IllegalStateException("No middle snake found");
+  }
+
+  private void addEdit(int aLo, int aHi, int bLo, int bHi) {
+    // Sub-problems are solved left to right, so touching edits can be merged
+    if (!edits.isEmpty()) {
+      Edit last = edits.get(edits.size() - 1);
+      if (last.originalEnd == aLo && last.revisedEnd == bLo) {
+        edits.set(edits.size() - 1, new Edit(last.originalStart, aHi, last.revisedStart, bHi));
+        return;
+      }
+    }
+    edits.add(new Edit(aLo, aHi, bLo, bHi));
+  }
+}
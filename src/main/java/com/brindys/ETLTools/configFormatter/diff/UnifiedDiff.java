@@ -0,0 +1,122 @@
+package com.brindys.ETLTools.configFormatter.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders the difference between two texts as a unified diff (as produced
+ * by diff -u / git diff), with three lines of context around each change.
+ */
+public class UnifiedDiff {
+
+  private static final int CONTEXT = 3;
+
+  private UnifiedDiff() {
+  }
+
+  /**
+   * Unified diff from original to revised, or an empty string if they are equal
+   */
+  public static String diff(String original, String revised, String path) {
+    if (original.equals(revised)) {
+      return "";
+    }
+
+    List<String> oldLines = splitLines(original);
+    List<String> newLines = splitLines(revised);
+    boolean oldMissingNewline = !original.isEmpty() && !original.endsWith("\n");
+    boolean newMissingNewline = !revised.isEmpty() && !revised.endsWith("\n");
+
+    // A last line without a newline must not compare equal to the same line with one
+    List<MyersDiff.Edit> edits = MyersDiff.diff(
+        compareKeys(oldLines, oldMissingNewline), compareKeys(newLines, newMissingNewline));
+
+    StringBuilder out = new StringBuilder();
+    out.append("--- a/").append(path).append('\n');
+    out.append("+++ b/").append(path).append('\n');
+
+    int i = 0;
+    while (i < edits.size()) {
+      // Group edits whose context would overlap into a single hunk
+      int j = i;
+      while (j + 1 < edits.size()
+          && edits.get(j + 1).originalStart - edits.get(j).originalEnd <= 2 * CONTEXT) {
+        j++;
+      }
+
+      MyersDiff.Edit first = edits.get(i);
+      MyersDiff.Edit last = edits.get(j);
+      int oldStart = Math.max(0, first.originalStart - CONTEXT);
+      int oldEnd = Math.min(oldLines.size(), last.originalEnd + CONTEXT);
+      int newStart = first.revisedStart - (first.originalStart - oldStart);
+      int newEnd = last.revisedEnd + (oldEnd - last.originalEnd);
+
+      out.append("@@ -").append(range(oldStart, oldEnd))
+          .append(" +").append(range(newStart, newEnd)).append(" @@\n");
+
+      int oldLine = oldStart;
+      for (int e = i; e <= j; e++) {
+        MyersDiff.Edit edit = edits.get(e);
+        for (; oldLine < edit.originalStart; oldLine++) {
+          appendLine(out, ' ', oldLines, oldLine, oldMissingNewline);
+        }
+        for (int k = edit.originalStart; k < edit.originalEnd; k++) {
+          appendLine(out, '-', oldLines, k, oldMissingNewline);
+        }
+        for (int k = edit.revisedStart; k < edit.revisedEnd; k++) {
+          appendLine(out, '+', newLines, k, newMissingNewline);
+        }
+        oldLine = edit.originalEnd;
+      }
+      for (; oldLine < oldEnd; oldLine++) {
+        appendLine(out, ' ', oldLines, oldLine, oldMissingNewline);
+      }
+
+      i = j + 1;
+    }
+
+    return out.toString();
+  }
+
+  private static List<String> splitLines(String text) {
+    List<String> lines = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        lines.add(text.substring(start, i));
+        start = i + 1;
+      }
+    }
+    if (start < text.length()) {
+      lines.add(text.substring(start));
+    }
+    return lines;
+  }
+
+  private static List<String> compareKeys(List<String> lines, boolean missingNewline) {
+    if (!missingNewline) {
+      return lines;
+    }
+    List<String> keys = new ArrayList<>(lines);
+    keys.set(keys.size() - 1, keys.get(keys.size() - 1) + "\u0000");
+    return keys;
+  }
+
+  private static void appendLine(StringBuilder out, char marker, List<String> lines, int index, boolean missingNewline) {
+    out.append(marker).append(lines.get(index)).append('\n');
+    if (missingNewline && index == lines.size() - 1) {
+      out.append("\\ No newline at end of file\n");
+    }
+  }
+
+  /**
+   * Hunk range in 1-based "start,count" form; an empty range points at the line before it
+   */
+  private static String range(int start, int end) {
+    int count = end - start;
+    if (count == 1) {
+      return String.valueOf(start + 1);
+    }
+    return (count == 0 ? start : start + 1) + "," + count;
+  }
+}
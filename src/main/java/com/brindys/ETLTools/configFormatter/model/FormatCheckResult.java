@@ -0,0 +1,13 @@
+package com.brindys.ETLTools.configFormatter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FormatCheckResult {
+  private boolean formatted;
+  private String diff; // unified diff, empty when already formatted
+}
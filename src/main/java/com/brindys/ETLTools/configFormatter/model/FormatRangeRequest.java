@@ -0,0 +1,16 @@
+package com.brindys.ETLTools.configFormatter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FormatRangeRequest {
+  private String config;
+  private Integer startLine;   // 1-based, inclusive
+  private Integer endLine;     // 1-based, inclusive
+  private Integer startOffset; // used when no line range is given
+  private Integer endOffset;
+}
@@ -0,0 +1,21 @@
+package com.brindys.ETLTools.configFormatter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Replace whole lines startLine..endLine (1-based, inclusive) with newText.
+ * The same region as character offsets is [startOffset, endOffset), including
+ * the trailing newline. An insert has endLine = startLine - 1.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TextEdit {
+  private int startLine;
+  private int endLine;
+  private int startOffset;
+  private int endOffset;
+  private String newText;
+}
@@ -1,153 +1,549 @@
 package com.brindys.ETLTools.configFormatter.service;
 
+import com.brindys.ETLTools.configFormatter.diff.UnifiedDiff;
+import com.brindys.ETLTools.configFormatter.model.FormatCheckResult;
+import com.brindys.ETLTools.configFormatter.model.TextEdit;
+import com.brindys.ETLTools.configFormatter.sql.SqlPrettyPrinter;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
 public class ConfigFormatterService {
 
+  // Below this much SQL, formatting on one thread is faster than splitting it up
+  private static final int PARALLEL_THRESHOLD_CHARS = 64 * 1024;
+
+  private static final int FINGERPRINT_CACHE_SIZE = 1024;
+  // Total characters, keys and values, the SQL block cache may hold
+  private static final long SQL_CACHE_MAX_CHARS = 4L * 1024 * 1024;
+  private static final int SQL_CACHE_MAX_BLOCK_CHARS = 64 * 1024;
+
+  private static final Pattern VARIABLE_PATTERN = Pattern.compile(
+      "VARIABLE\\s+\\w+\\s*\\{[^}]*\\}",
+      Pattern.CASE_INSENSITIVE
+  );
+
+  private static final Pattern HIERARCHY_PATTERN = Pattern.compile(
+      "#-+\\s*hier",
+      Pattern.CASE_INSENSITIVE
+  );
+
+  private static final Pattern SQL_PATTERN = Pattern.compile(
+      "(QUERY\\s*=\\s*)([\\s\\S]*?)(?=\n\\s*\\})",
+      Pattern.CASE_INSENSITIVE
+  );
+
+  private static final Pattern QUERY_PREFIX_PATTERN = Pattern.compile(
+      "(QUERY\\s*=\\s*)(.*)",
+      Pattern.DOTALL | Pattern.CASE_INSENSITIVE
+  );
+
+  private static final Pattern CLOSING_BRACE_PATTERN = Pattern.compile(
+      "([^\\s\\n])[ \\t]*\\}[ \\t]*$",
+      Pattern.MULTILINE
+  );
+
+  private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile(
+      "(VARIABLE|HIER|SQL)_PLACEHOLDER_(\\d+)"
+  );
+
+  // Fingerprints of recently formatted output - a config that matches one
+  // is already canonical and comes back untouched without being re-formatted
+  private final Set<String> formattedFingerprints = Collections.newSetFromMap(lruMap(FINGERPRINT_CACHE_SIZE));
+
+  // Formatted SQL blocks, keyed by the original block text
+  private final Map<String, String> sqlBlockCache = charBoundedLruMap(SQL_CACHE_MAX_CHARS);
+
   /**
    * Main entry point - formats an entire PSL config
    */
   public String formatConfig(String config) {
-    // Step 1: Extract and protect VARIABLE lines (before any processing)
-    List<ProtectedBlock> variableBlocks = extractVariableBlocks(config);
-    String text = replaceWithPlaceholders(config, variableBlocks, "VARIABLE_PLACEHOLDER_");
+    // Fast path: this exact text (give or take a final newline) was produced
+    // by the formatter before
+    String body = config.endsWith("\n") ? config.substring(0, config.length() - 1) : config;
+    String fingerprint = fingerprint(body);
+    if (formattedFingerprints.contains(fingerprint)) {
+      return body;
+    }
 
-    // Step 2: Extract and protect hierarchy section (everything after #---hier---)
-    List<ProtectedBlock> hierBlocks = extractHierarchyBlocks(text);
-    text = replaceWithPlaceholders(text, hierBlocks, "HIER_PLACEHOLDER_");
+    String formatted = formatUncached(config);
+    formattedFingerprints.add(formatted.equals(body) ? fingerprint : fingerprint(formatted));
+    return formatted;
+  }
 
-    // Step 3: Extract and protect SQL queries (before brace normalization)
-    List<ProtectedBlock> sqlBlocks = extractSqlBlocks(text);
-    text = replaceWithPlaceholders(text, sqlBlocks, "SQL_PLACEHOLDER_");
+  /**
+   * Whether the config is already in canonical form
+   */
+  public boolean isFormatted(String config) {
+    return isUnchanged(config, formatConfig(config));
+  }
 
-    // Step 4: Now safe to normalize braces and other formatting
+  /**
+   * Whether formatting left the config as it was. The formatter output has no
+   * final newline, so a single one at the end of the config is allowed.
+   */
+  public boolean isUnchanged(String config, String formatted) {
+    return config.equals(formatted)
+        || (config.length() == formatted.length() + 1 && config.endsWith("\n") && config.startsWith(formatted));
+  }
+
+  /**
+   * Check mode - reports whether the config is formatted and, if not, the
+   * unified diff that formatting would apply
+   */
+  public FormatCheckResult checkConfig(String config, String path) {
+    String formatted = formatConfig(config);
+    if (isUnchanged(config, formatted)) {
+      return new FormatCheckResult(true, "");
+    }
+
+    // Keep the file's final newline so it doesn't show up as a change
+    if (config.endsWith("\n")) {
+      formatted = formatted + "\n";
+    }
+    return new FormatCheckResult(false, UnifiedDiff.diff(config, formatted, path));
+  }
+
+  /**
+   * Streaming variant - reads the config a line at a time and formats one
+   * top-level block at a time, so only the current block is held in memory.
+   * Top-level blocks sit at indent 0, so formatting them one by one gives the
+   * same layout as formatting the whole config.
+   */
+  public void formatConfig(Reader reader, Writer writer) throws IOException {
+    BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    BlockWriter out = new BlockWriter(writer);
+    StringBuilder block = new StringBuilder();
+    boolean inHierarchy = false;
+    int depth = 0;
+
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (inHierarchy) {
+        // Hierarchy section is copied as is, apart from collapsing blank lines
+        out.write(line);
+        continue;
+      }
+
+      if (block.length() == 0) {
+        if (line.trim().isEmpty()) {
+          out.write(line);
+          continue;
+        }
+        if (HIERARCHY_PATTERN.matcher(line).find()) {
+          inHierarchy = true;
+          out.write(line);
+          continue;
+        }
+      }
+
+      block.append(line).append('\n');
+      depth = Math.max(0, depth + braceDelta(line));
+      if (depth == 0) {
+        out.write(formatConfig(block.toString()));
+        block.setLength(0);
+      }
+    }
+
+    // Unbalanced braces - whatever is left is formatted as one block
+    if (block.length() > 0) {
+      out.write(formatConfig(block.toString()));
+    }
+    writer.flush();
+  }
+
+  /**
+   * Joins formatted chunks with single newlines, collapsing blank lines
+   * between them to one and dropping leading and trailing blank lines
+   */
+  private static class BlockWriter {
+    private final Writer writer;
+    private boolean wroteAny = false;
+    private boolean pendingBlank = false;
+
+    BlockWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    void write(String text) throws IOException {
+      if (text.trim().isEmpty()) {
+        pendingBlank = wroteAny;
+        return;
+      }
+      if (wroteAny) {
+        writer.write('\n');
+        if (pendingBlank) {
+          writer.write('\n');
+        }
+      }
+      writer.write(text);
+      wroteAny = true;
+      pendingBlank = false;
+    }
+  }
+
+  private String formatUncached(String config) {
+    // Step 1: Find the protected regions - VARIABLE lines, SQL queries and
+    // the hierarchy section (everything after #---hier---)
+    List<ProtectedBlock> blocks = extractProtectedBlocks(config);
+
+    // Step 2: Swap each protected region for a placeholder line
+    String text = replaceWithPlaceholders(config, blocks);
+
+    // Step 3: Now safe to normalize braces and other formatting
     text = normalizeLineSpacing(text);
     text = normalizeEqualsSpacing(text);
     text = normalizeBraceSpacing(text);
     text = normalizeClosingBraces(text);
 
-    // Step 5: Standardize indentation
+    // Step 4: Standardize indentation
     text = standardizeIndentation(text);
 
-    // Step 6: Restore and format SQL blocks
-    text = restoreAndFormatSqlBlocks(text, sqlBlocks);
-
-    // Step 7: Restore VARIABLE blocks (unchanged)
-    text = restoreBlocks(text, variableBlocks, "VARIABLE_PLACEHOLDER_");
+    // Step 5: Format SQL blocks (VARIABLE and hierarchy blocks stay unchanged)
+    formatSqlBlocks(blocks);
 
-    // Step 8: Restore hierarchy blocks (unchanged)
-    text = restoreBlocks(text, hierBlocks, "HIER_PLACEHOLDER_");
+    // Step 6: Splice all blocks back in
+    text = restoreBlocks(text, blocks);
 
-    // Step 9: Clean up
+    // Step 7: Clean up
     text = text.replaceAll("\n{3,}", "\n\n");
     text = removeBlankLinesInBlocks(text);
 
     return text;
   }
 
-  // ========== BLOCK PROTECTION ==========
+  // ========== CACHING ==========
 
-  private static class ProtectedBlock {
-    int index;
-    String original;
-    String formatted;
+  private static <K, V> Map<K, V> lruMap(int maxEntries) {
+    return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+      }
+    });
+  }
 
-    ProtectedBlock(int index, String original) {
-      this.index = index;
-      this.original = original;
-      this.formatted = original;
+  /**
+   * LRU map of strings bounded by the characters it holds rather than its
+   * entry count, since cached blocks range from a line to 64K characters
+   */
+  private static Map<String, String> charBoundedLruMap(long maxChars) {
+    return Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+      private long chars;
+
+      @Override
+      public String put(String key, String value) {
+        String previous = super.put(key, value);
+        chars += key.length() + value.length();
+        if (previous != null) {
+          chars -= key.length() + previous.length();
+        }
+        Iterator<Map.Entry<String, String>> eldest = entrySet().iterator();
+        while (chars > maxChars && size() > 1) {
+          Map.Entry<String, String> e = eldest.next();
+          chars -= e.getKey().length() + e.getValue().length();
+          eldest.remove();
+        }
+        return previous;
+      }
+    });
+  }
+
+  private static String fingerprint(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
     }
   }
 
-  private List<ProtectedBlock> extractVariableBlocks(String config) {
-    List<ProtectedBlock> blocks = new ArrayList<>();
-    Pattern pattern = Pattern.compile(
-        "VARIABLE\\s+\\w+\\s*\\{[^}]*\\}",
-        Pattern.CASE_INSENSITIVE
-    );
+  // ========== RANGE FORMATTING ==========
 
-    Matcher matcher = pattern.matcher(config);
-    int index = 0;
-    while (matcher.find()) {
-      blocks.add(new ProtectedBlock(index++, matcher.group()));
+  /**
+   * Format only the top-level blocks that overlap lines startLine..endLine
+   * (1-based, inclusive) and return the edits that turn the config into the
+   * formatted version. Top-level blocks always sit at indent 0, so each one
+   * is formatted on its own and nothing after the range is scanned.
+   */
+  public List<TextEdit> formatRange(String config, int startLine, int endLine) {
+    List<TextEdit> edits = new ArrayList<>();
+    int[] lineStarts = lineStarts(config);
+    startLine = Math.max(1, startLine);
+    endLine = Math.min(lineStarts.length, endLine);
+    if (startLine > endLine) {
+      return edits;
     }
-    return blocks;
+
+    // The hierarchy section is never formatted
+    Matcher hierMatcher = HIERARCHY_PATTERN.matcher(config);
+    int hierLine = hierMatcher.find() ? lineOf(lineStarts, hierMatcher.start()) : lineStarts.length;
+
+    int depth = 0;
+    int blockStart = -1;
+    for (int i = 0; i < hierLine; i++) {
+      String line = config.substring(lineStarts[i], lineEnd(config, lineStarts, i));
+      if (blockStart < 0) {
+        if (line.trim().isEmpty()) continue;
+        if (i + 1 > endLine) break;
+        blockStart = i;
+      }
+
+      depth = Math.max(0, depth + braceDelta(line));
+      if (depth == 0) {
+        if (i + 1 >= startLine) {
+          addBlockEdit(config, lineStarts, blockStart, i, edits);
+        }
+        blockStart = -1;
+      }
+    }
+
+    // A block left open (unbalanced braces) is not touched
+    return edits;
+  }
+
+  public List<TextEdit> formatOffsetRange(String config, int startOffset, int endOffset) {
+    int[] lineStarts = lineStarts(config);
+    int start = Math.max(0, Math.min(startOffset, config.length()));
+    int end = Math.max(start, Math.min(endOffset, config.length()));
+    return formatRange(config, lineOf(lineStarts, start) + 1, lineOf(lineStarts, end) + 1);
   }
 
   /**
-   * Extract everything from #---hier--- line to end of file
-   * This section should not be formatted
+   * Format lines first..last as a unit and record the changed lines, with the
+   * unchanged lines at either end trimmed off the edit
    */
-  private List<ProtectedBlock> extractHierarchyBlocks(String config) {
-    List<ProtectedBlock> blocks = new ArrayList<>();
-    Pattern pattern = Pattern.compile(
-        "(#-+\\s*hier.*)",
-        Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-    );
+  private void addBlockEdit(String config, int[] lineStarts, int first, int last, List<TextEdit> edits) {
+    String original = config.substring(lineStarts[first], lineEnd(config, lineStarts, last));
+    String formatted = formatConfig(original);
+    if (formatted.equals(original)) {
+      return;
+    }
 
-    Matcher matcher = pattern.matcher(config);
-    int index = 0;
-    while (matcher.find()) {
-      blocks.add(new ProtectedBlock(index++, matcher.group()));
+    String[] oldLines = original.split("\n", -1);
+    String[] newLines = formatted.split("\n", -1);
+
+    int prefix = 0;
+    while (prefix < oldLines.length && prefix < newLines.length && oldLines[prefix].equals(newLines[prefix])) {
+      prefix++;
     }
-    return blocks;
+    int suffix = 0;
+    while (suffix < oldLines.length - prefix && suffix < newLines.length - prefix
+        && oldLines[oldLines.length - 1 - suffix].equals(newLines[newLines.length - 1 - suffix])) {
+      suffix++;
+    }
+
+    int editStart = first + prefix;
+    int editEnd = first + oldLines.length - suffix; // exclusive
+    int startOffset = lineStarts[editStart];
+    int endOffset = editEnd < lineStarts.length ? lineStarts[editEnd] : config.length();
+
+    StringBuilder newText = new StringBuilder();
+    for (int i = prefix; i < newLines.length - suffix; i++) {
+      newText.append(newLines[i]).append("\n");
+    }
+    if (endOffset == config.length() && !config.endsWith("\n") && newText.length() > 0) {
+      newText.setLength(newText.length() - 1);
+    }
+
+    edits.add(new TextEdit(editStart + 1, editEnd, startOffset, endOffset, newText.toString()));
+  }
+
+  private int[] lineStarts(String config) {
+    int count = 1;
+    for (int i = 0; i < config.length(); i++) {
+      if (config.charAt(i) == '\n') count++;
+    }
+    int[] starts = new int[count];
+    int line = 1;
+    for (int i = 0; i < config.length(); i++) {
+      if (config.charAt(i) == '\n') starts[line++] = i + 1;
+    }
+    return starts;
+  }
+
+  private int lineEnd(String config, int[] lineStarts, int line) {
+    return line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : config.length();
+  }
+
+  private int lineOf(int[] lineStarts, int offset) {
+    int index = Arrays.binarySearch(lineStarts, offset);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  private int braceDelta(String line) {
+    int delta = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '{') delta++;
+      if (c == '}') delta--;
+    }
+    return delta;
   }
 
-  private List<ProtectedBlock> extractSqlBlocks(String config) {
+  // ========== BLOCK PROTECTION ==========
+
+  private enum BlockType {
+    VARIABLE, HIER, SQL
+  }
+
+  /**
+   * A region of the original config, tracked by offset. Its placeholder is
+   * its position in the block list, so identical blocks never collide.
+   */
+  private static class ProtectedBlock {
+    final BlockType type;
+    final int start;
+    final int end;
+    final String original;
+    String formatted;
+
+    ProtectedBlock(BlockType type, String config, int start, int end) {
+      this.type = type;
+      this.start = start;
+      this.end = end;
+      this.original = config.substring(start, end);
+      this.formatted = original;
+    }
+  }
+
+  /**
+   * Collect all protected regions, ordered by offset and non-overlapping
+   */
+  private List<ProtectedBlock> extractProtectedBlocks(String config) {
+    Matcher hierMatcher = HIERARCHY_PATTERN.matcher(config);
+    int hierStart = hierMatcher.find() ? hierMatcher.start() : config.length();
+
+    List<ProtectedBlock> variables = new ArrayList<>();
+    Matcher variableMatcher = VARIABLE_PATTERN.matcher(config).region(0, hierStart);
+    while (variableMatcher.find()) {
+      variables.add(new ProtectedBlock(BlockType.VARIABLE, config, variableMatcher.start(), variableMatcher.end()));
+    }
+
+    // Merge SQL blocks in between the VARIABLE blocks, skipping any overlap
     List<ProtectedBlock> blocks = new ArrayList<>();
-    Pattern pattern = Pattern.compile(
-        "(QUERY\\s*=\\s*)([\\s\\S]*?)(?=\n\\s*\\})",
-        Pattern.CASE_INSENSITIVE
-    );
+    Matcher sqlMatcher = SQL_PATTERN.matcher(config).region(0, hierStart);
+    int v = 0;
+    while (sqlMatcher.find()) {
+      while (v < variables.size() && variables.get(v).end <= sqlMatcher.start()) {
+        blocks.add(variables.get(v++));
+      }
+      if (v < variables.size() && variables.get(v).start < sqlMatcher.end()) {
+        continue;
+      }
+      blocks.add(new ProtectedBlock(BlockType.SQL, config, sqlMatcher.start(), sqlMatcher.end()));
+    }
+    while (v < variables.size()) {
+      blocks.add(variables.get(v++));
+    }
 
-    Matcher matcher = pattern.matcher(config);
-    int index = 0;
-    while (matcher.find()) {
-      blocks.add(new ProtectedBlock(index++, matcher.group()));
+    if (hierStart < config.length()) {
+      blocks.add(new ProtectedBlock(BlockType.HIER, config, hierStart, config.length()));
     }
     return blocks;
   }
 
-  private String replaceWithPlaceholders(String text, List<ProtectedBlock> blocks, String prefix) {
-    for (int i = blocks.size() - 1; i >= 0; i--) {
+  private String replaceWithPlaceholders(String config, List<ProtectedBlock> blocks) {
+    StringBuilder result = new StringBuilder(config.length());
+    int last = 0;
+    for (int i = 0; i < blocks.size(); i++) {
       ProtectedBlock block = blocks.get(i);
-      text = text.replace(block.original, prefix + block.index);
+      result.append(config, last, block.start)
+          .append(block.type).append("_PLACEHOLDER_").append(i);
+      last = block.end;
     }
-    return text;
+    result.append(config, last, config.length());
+    return result.toString();
   }
 
-  private String restoreBlocks(String text, List<ProtectedBlock> blocks, String prefix) {
-    for (ProtectedBlock block : blocks) {
-      text = text.replace(prefix + block.index, block.formatted);
+  private String restoreBlocks(String text, List<ProtectedBlock> blocks) {
+    StringBuilder result = new StringBuilder(text.length() * 2);
+    Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+    int last = 0;
+    while (matcher.find()) {
+      int index = Integer.parseInt(matcher.group(2));
+      if (index >= blocks.size() || !blocks.get(index).type.name().equals(matcher.group(1))) {
+        continue;
+      }
+      result.append(text, last, matcher.start()).append(blocks.get(index).formatted);
+      last = matcher.end();
     }
-    return text;
+    result.append(text, last, text.length());
+    return result.toString();
   }
 
-  private String restoreAndFormatSqlBlocks(String text, List<ProtectedBlock> blocks) {
+  /**
+   * Each SQL block is formatted independently, so large configs are spread
+   * across the fork-join pool. Blocks keep their list position, so output is
+   * identical to formatting them one after another.
+   */
+  private void formatSqlBlocks(List<ProtectedBlock> blocks) {
+    List<ProtectedBlock> sqlBlocks = new ArrayList<>();
+    long sqlChars = 0;
     for (ProtectedBlock block : blocks) {
-      String original = block.original;
-      Pattern queryPattern = Pattern.compile("(QUERY\\s*=\\s*)(.*)", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-      Matcher matcher = queryPattern.matcher(original);
+      if (block.type == BlockType.SQL) {
+        sqlBlocks.add(block);
+        sqlChars += block.original.length();
+      }
+    }
 
-      if (matcher.find()) {
-        String prefix = matcher.group(1);
-        String sql = matcher.group(2);
+    if (sqlBlocks.size() > 1 && sqlChars >= PARALLEL_THRESHOLD_CHARS) {
+      sqlBlocks.parallelStream().forEach(block -> block.formatted = formatSqlBlock(block.original));
+    } else {
+      for (ProtectedBlock block : sqlBlocks) {
+        block.formatted = formatSqlBlock(block.original);
+      }
+    }
+  }
 
-        String flattened = flattenQuery(sql);
-        String formatted = formatQuery(flattened, "        "); // 8 spaces base indent
+  private String formatSqlBlock(String original) {
+    if (original.length() > SQL_CACHE_MAX_BLOCK_CHARS) {
+      return formatSqlBlockUncached(original);
+    }
 
-        block.formatted = prefix + formatted;
-      }
+    String cached = sqlBlockCache.get(original);
+    if (cached != null) {
+      return cached;
+    }
 
-      text = text.replace("SQL_PLACEHOLDER_" + block.index, block.formatted);
+    String formatted = formatSqlBlockUncached(original);
+    sqlBlockCache.put(original, formatted);
+    // Already formatted blocks map to themselves, so they are skipped next time
+    sqlBlockCache.put(formatted, formatted);
+    return formatted;
+  }
+
+  private String formatSqlBlockUncached(String original) {
+    Matcher matcher = QUERY_PREFIX_PATTERN.matcher(original);
+    if (!matcher.find()) {
+      return original;
     }
-    return text;
+
+    String prefix = matcher.group(1);
+    String sql = matcher.group(2);
+
+    String flattened = flattenQuery(sql);
+    String formatted = formatQuery(flattened, "        "); // 8 spaces base indent
+
+    return prefix + formatted;
   }
 
   // ========== NORMALIZATION METHODS ==========
@@ -192,7 +588,8 @@ public class ConfigFormatterService {
   }
 
   private String normalizeClosingBraces(String text) {
-    return text.replaceAll("([^\\s\\n])\\s*\\}\\s*$", "$1\n}");
+    // Applied per line, so every block gets the same treatment as the last one
+    return CLOSING_BRACE_PATTERN.matcher(text).replaceAll("$1\n}");
   }
 
   private String standardizeIndentation(String text) {
@@ -267,270 +664,6 @@ public class ConfigFormatterService {
   }
 
   public String formatQuery(String query, String baseIndent) {
-    return formatQueryWithDepth(query, baseIndent, 0);
-  }
-
-  private String formatQueryWithDepth(String query, String baseIndent, int depth) {
-    // Indentation levels (at depth 0 with baseIndent of 8 spaces):
-    // clauseIndent = 12 spaces - for FROM, JOIN, WHERE
-    // colIndent    = 16 spaces - for columns, tables, WHERE conditions
-    // onIndent     = 16 spaces - for ON (same as colIndent)
-    // onCondIndent = 20 spaces - for ON conditions
-    String clauseIndent = baseIndent + "    " + "    ".repeat(depth);    // base + 4 + depth
-    String colIndent = baseIndent + "        " + "    ".repeat(depth);   // base + 8 + depth
-    String onCondIndent = baseIndent + "            " + "    ".repeat(depth); // base + 12 + depth
-
-    // Step 1: Uppercase keywords
-    String formatted = uppercaseKeywords(query);
-
-    // Step 2: Handle subqueries first (recursive)
-    formatted = formatSubqueries(formatted, baseIndent, depth);
-
-    // Step 3: Format SELECT columns
-    formatted = formatSelect(formatted, colIndent);
-
-    // Step 4: Format FROM
-    formatted = formatFrom(formatted, clauseIndent, colIndent);
-
-    // Step 5: Format JOINs
-    formatted = formatJoins(formatted, clauseIndent, colIndent);
-
-    // Step 6: Format ON
-    formatted = formatOn(formatted, colIndent, onCondIndent);
-
-    // Step 7: Format WHERE
-    formatted = formatWhere(formatted, clauseIndent, colIndent);
-
-    // Step 8: Format ORDER BY
-    formatted = formatOrderBy(formatted, clauseIndent, colIndent);
-
-    // Step 9: Format CASE statements
-    formatted = formatCase(formatted, colIndent);
-
-    // Step 10: Format OVER clauses (PARTITION BY, ORDER BY inside OVER)
-    formatted = formatOver(formatted, colIndent);
-
-    return formatted;
-  }
-
-  private String uppercaseKeywords(String query) {
-    String[] keywords = {
-        "SELECT", "FROM", "WHERE", "AND", "OR", "ORDER BY", "GROUP BY",
-        "LEFT JOIN", "INNER JOIN", "RIGHT JOIN", "FULL JOIN", "ON", "AS",
-        "DISTINCT", "CAST", "CASE", "WHEN", "THEN", "ELSE", "END",
-        "IS", "NOT", "NULL", "IN", "BETWEEN", "LIKE",
-        "ROW_NUMBER", "OVER", "PARTITION BY", "COALESCE"
-    };
-
-    for (String keyword : keywords) {
-      Pattern pattern = Pattern.compile("\\b" + Pattern.quote(keyword) + "\\b", Pattern.CASE_INSENSITIVE);
-      Matcher matcher = pattern.matcher(query);
-      query = matcher.replaceAll(keyword.toUpperCase());
-    }
-
-    return query;
-  }
-
-  private String formatSubqueries(String query, String baseIndent, int depth) {
-    StringBuilder result = new StringBuilder();
-    int i = 0;
-
-    while (i < query.length()) {
-      // Look for ( SELECT pattern
-      if (query.charAt(i) == '(' && i + 1 < query.length()) {
-        String ahead = query.substring(i + 1).trim();
-        if (ahead.toUpperCase().startsWith("SELECT")) {
-          // Find matching closing paren
-          int start = i;
-          int parenDepth = 1;
-          int j = i + 1;
-
-          while (j < query.length() && parenDepth > 0) {
-            if (query.charAt(j) == '(') parenDepth++;
-            if (query.charAt(j) == ')') parenDepth--;
-            j++;
-          }
-
-          String subquery = query.substring(start + 1, j - 1).trim();
-          String formattedSubquery = formatQueryWithDepth(subquery, baseIndent, depth + 1);
-
-          // Indent for the SELECT keyword of the subquery (colIndent at current depth)
-          String selectIndent = baseIndent + "        " + "    ".repeat(depth);
-          // Closing paren at clauseIndent level for this depth
-          String closingIndent = baseIndent + "    " + "    ".repeat(depth);
-
-          result.append("(\n");
-          result.append(selectIndent);  // Add indentation before SELECT
-          result.append(formattedSubquery);
-          result.append("\n").append(closingIndent).append(")");
-
-          i = j;
-          continue;
-        }
-      }
-
-      result.append(query.charAt(i));
-      i++;
-    }
-
-    return result.toString();
-  }
-
-  private String formatSelect(String query, String colIndent) {
-    // Find SELECT ... FROM at the top level (not inside parens)
-    int selectIndex = findKeywordAtTopLevel(query, "SELECT ");
-    if (selectIndex == -1) return query;
-
-    int fromIndex = findKeywordAtTopLevel(query.substring(selectIndex), "FROM ");
-    if (fromIndex == -1) return query;
-    fromIndex += selectIndex;
-
-    String beforeSelect = query.substring(0, selectIndex);
-    String columns = query.substring(selectIndex + 7, fromIndex).trim();
-    String afterFrom = query.substring(fromIndex);
-
-    List<String> columnList = splitByComma(columns);
-    String formattedColumns = "SELECT\n" + colIndent + String.join(",\n" + colIndent, columnList);
-
-    return beforeSelect + formattedColumns + "\n" + afterFrom;
-  }
-
-  private String formatFrom(String query, String clauseIndent, String colIndent) {
-    // FROM keyword on its own line with clauseIndent, table on next line with colIndent
-    query = query.replaceAll("\\bFROM\\b(?!\\s*\n)", "\n" + clauseIndent + "FROM\n" + colIndent);
-    return query;
-  }
-
-  private String formatJoins(String query, String clauseIndent, String colIndent) {
-    String[] joinTypes = {"LEFT JOIN", "INNER JOIN", "RIGHT JOIN", "FULL JOIN"};
-
-    for (String joinType : joinTypes) {
-      // Handle JOIN with subquery: LEFT JOIN (
-      query = query.replaceAll("\\s*" + joinType + "\\s*\\(", "\n" + clauseIndent + joinType + " (");
-      // Handle JOIN with table: LEFT JOIN tablename
-      query = query.replaceAll("\\s*" + joinType + "\\s+(?!\\()", "\n" + clauseIndent + joinType + " ");
-    }
-
-    return query;
-  }
-
-  private String formatOn(String query, String onIndent, String onCondIndent) {
-    // ON on its own line at onIndent, conditions on next line at onCondIndent
-    query = query.replaceAll("\\s+ON\\s+", "\n" + onIndent + "ON\n" + onCondIndent);
-    return query;
-  }
-
-  private String formatWhere(String query, String clauseIndent, String colIndent) {
-    // WHERE on its own line, conditions on next line
-    query = query.replaceAll("\\s+WHERE\\s+", "\n" + clauseIndent + "WHERE\n" + colIndent);
-
-    // AND at top level gets new line
-    StringBuilder result = new StringBuilder();
-    int parenDepth = 0;
-    int i = 0;
-    String upperQuery = query.toUpperCase();
-
-    while (i < query.length()) {
-      char c = query.charAt(i);
-      if (c == '(') parenDepth++;
-      if (c == ')') parenDepth--;
-
-      // Check for AND at top level (parenDepth == 0)
-      if (parenDepth == 0 && i + 5 <= query.length()) {
-        String ahead = upperQuery.substring(i, Math.min(i + 5, query.length()));
-        if (ahead.equals(" AND ")) {
-          result.append("\n").append(colIndent).append("AND ");
-          i += 5;
-          continue;
-        }
-      }
-
-      result.append(c);
-      i++;
-    }
-
-    return result.toString();
-  }
-
-  private String formatOrderBy(String query, String clauseIndent, String colIndent) {
-    // Only format ORDER BY that's NOT inside OVER()
-    // This is tricky - for now, just handle top-level ORDER BY
-    // The OVER() ORDER BY will be handled by formatOver
-    return query;
-  }
-
-  private String formatCase(String query, String colIndent) {
-    String caseIndent = colIndent + "    ";
-    String whenIndent = colIndent + "        ";
-
-    // CASE on new line
-    query = query.replaceAll("\\bCASE\\b", "\n" + caseIndent + "CASE");
-    // WHEN on new line
-    query = query.replaceAll("\\s+WHEN\\b", "\n" + whenIndent + "WHEN");
-    // ELSE on new line
-    query = query.replaceAll("\\s+ELSE\\b", "\n" + whenIndent + "ELSE");
-    // END on new line (but not END, which is end of CASE followed by comma)
-    query = query.replaceAll("\\s+END\\b", "\n" + caseIndent + "END");
-
-    return query;
-  }
-
-  private String formatOver(String query, String colIndent) {
-    String overIndent = colIndent + "    ";
-    String partitionIndent = colIndent + "        ";
-
-    // OVER ( on new line
-    query = query.replaceAll("\\bOVER\\s*\\(", "\n" + overIndent + "OVER (\n" + partitionIndent);
-    // PARTITION BY
-    query = query.replaceAll("\\bPARTITION BY\\b", "PARTITION BY");
-    // ORDER BY inside OVER - add newline
-    query = query.replaceAll("\\s+ORDER BY\\s+", "\n" + partitionIndent + "ORDER BY\n" + partitionIndent + "    ");
-
-    return query;
-  }
-
-  private int findKeywordAtTopLevel(String query, String keyword) {
-    int parenDepth = 0;
-    String upperQuery = query.toUpperCase();
-    String upperKeyword = keyword.toUpperCase();
-
-    for (int i = 0; i <= query.length() - keyword.length(); i++) {
-      char c = query.charAt(i);
-      if (c == '(') parenDepth++;
-      if (c == ')') parenDepth--;
-
-      if (parenDepth == 0 && upperQuery.substring(i).startsWith(upperKeyword)) {
-        return i;
-      }
-    }
-    return -1;
-  }
-
-  private List<String> splitByComma(String text) {
-    List<String> parts = new ArrayList<>();
-    StringBuilder current = new StringBuilder();
-    int parenDepth = 0;
-
-    for (int i = 0; i < text.length(); i++) {
-      char c = text.charAt(i);
-
-      if (c == '(') {
-        parenDepth++;
-      } else if (c == ')') {
-        parenDepth--;
-      } else if (c == ',' && parenDepth == 0) {
-        parts.add(current.toString().trim());
-        current = new StringBuilder();
-        continue;
-      }
-
-      current.append(c);
-    }
-
-    if (current.length() > 0) {
-      parts.add(current.toString().trim());
-    }
-
-    return parts;
+    return SqlPrettyPrinter.format(query, baseIndent);
   }
 }
\ No newline at end of file
@@ -0,0 +1,442 @@
+package com.brindys.ETLTools.configFormatter.sql;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Formats a flattened SQL query in PSL style.
+ *
+ * The query is tokenized once and printed in a single pass over the tokens.
+ * Subqueries are printed recursively over their token range, so every token
+ * is visited exactly once and formatting time is linear in query length.
+ *
+ * Indentation levels (at depth 0 with baseIndent of 8 spaces):
+ *   clauseIndent = 12 spaces - for FROM, JOIN, WHERE
+ *   colIndent    = 16 spaces - for columns, tables, WHERE conditions, ON
+ *   condIndent   = 20 spaces - for ON conditions
+ * Each subquery level adds another 4 spaces.
+ */
+public class SqlPrettyPrinter {
+
+  private static final int INDENT = 4;
+
+  private static final Set<String> KEYWORDS = Set.of(
+      "SELECT", "FROM", "WHERE", "AND", "OR", "ON", "AS",
+      "DISTINCT", "CAST", "CASE", "WHEN", "THEN", "ELSE", "END",
+      "IS", "NOT", "NULL", "IN", "BETWEEN", "LIKE",
+      "ROW_NUMBER", "OVER", "COALESCE", "JOIN", "HAVING", "UNION", "LIMIT", "WITH"
+  );
+
+  private static final Set<String> JOIN_PREFIXES = Set.of("LEFT", "RIGHT", "INNER", "FULL", "CROSS");
+
+  private enum Clause { NONE, SELECT, FROM, JOIN, ON, WHERE, GROUP_BY, ORDER_BY, HAVING, OTHER }
+
+  private final List<SqlToken> tokens;
+  private final int baseIndent;
+  private final IndentWriter out;
+
+  private SqlPrettyPrinter(List<SqlToken> tokens, String baseIndent, int capacity) {
+    this.tokens = tokens;
+    this.baseIndent = baseIndent.length();
+    this.out = new IndentWriter(capacity, this.baseIndent + 2 * INDENT);
+  }
+
+  /**
+   * Format a flattened query. The first line is returned without indentation,
+   * since it follows the QUERY = prefix in the config.
+   */
+  public static String format(String query, String baseIndent) {
+    List<SqlToken> tokens = SqlTokenizer.tokenize(query);
+    SqlPrettyPrinter printer = new SqlPrettyPrinter(tokens, baseIndent, query.length() * 2);
+    printer.printQuery(0, tokens.size(), 0);
+    return printer.out.toString();
+  }
+
+  // ========== QUERY LEVEL ==========
+
+  /**
+   * State for one query level (the top-level query or one subquery)
+   */
+  private static class Scope {
+    final int end;
+    final int depth;
+    final int clauseIndent;
+    final int colIndent;
+    final int condIndent;
+    Clause clause = Clause.NONE;
+    int parenDepth = 0;
+    boolean pendingBetween = false;
+    final Deque<Integer> cases = new ArrayDeque<>();
+
+    Scope(int end, int depth, int clauseIndent) {
+      this.end = end;
+      this.depth = depth;
+      this.clauseIndent = clauseIndent;
+      this.colIndent = clauseIndent + INDENT;
+      this.condIndent = clauseIndent + 2 * INDENT;
+    }
+
+    boolean atTopLevel() {
+      return parenDepth == 0 && cases.isEmpty();
+    }
+  }
+
+  private void printQuery(int start, int end, int depth) {
+    Scope scope = new Scope(end, depth, baseIndent + INDENT + INDENT * depth);
+    int i = start;
+
+    while (i < end) {
+      SqlToken token = tokens.get(i);
+      String upper = token.getType() == SqlToken.Type.WORD ? token.getText().toUpperCase() : "";
+
+      if (!scope.atTopLevel()) {
+        i = printToken(i, scope);
+        continue;
+      }
+
+      if (token.getType() == SqlToken.Type.COMMA) {
+        out.write(",", false);
+        if (scope.clause == Clause.SELECT || scope.clause == Clause.GROUP_BY || scope.clause == Clause.ORDER_BY) {
+          out.newline(scope.colIndent);
+        }
+        i++;
+        continue;
+      }
+
+      switch (upper) {
+        case "SELECT" -> {
+          if (!out.atLineStart()) {
+            out.newline(scope.clauseIndent);
+          }
+          out.write("SELECT", token.hasSpaceBefore());
+          i++;
+          if (isWord(i, end, "DISTINCT")) {
+            out.write("DISTINCT", true);
+            i++;
+          }
+          out.newline(scope.colIndent);
+          scope.clause = Clause.SELECT;
+        }
+        case "FROM" -> i = startClause(i, 1, "FROM", scope, Clause.FROM);
+        case "WHERE" -> i = startClause(i, 1, "WHERE", scope, Clause.WHERE);
+        case "HAVING" -> i = startClause(i, 1, "HAVING", scope, Clause.HAVING);
+        case "GROUP", "ORDER" -> {
+          if (isWord(i + 1, end, "BY")) {
+            i = startClause(i, 2, upper + " BY",
+                scope, upper.equals("GROUP") ? Clause.GROUP_BY : Clause.ORDER_BY);
+          } else {
+            i = printToken(i, scope);
+          }
+        }
+        case "UNION" -> {
+          boolean all = isWord(i + 1, end, "ALL");
+          out.newline(scope.clauseIndent);
+          out.write(all ? "UNION ALL" : "UNION", true);
+          out.newline(scope.colIndent);
+          scope.clause = Clause.NONE;
+          i += all ? 2 : 1;
+        }
+        case "LIMIT" -> {
+          out.newline(scope.clauseIndent);
+          out.write("LIMIT", true);
+          scope.clause = Clause.OTHER;
+          i++;
+        }
+        case "ON" -> {
+          out.newline(scope.colIndent);
+          out.write("ON", true);
+          out.newline(scope.condIndent);
+          scope.clause = Clause.ON;
+          i++;
+        }
+        case "AND" -> {
+          if (scope.pendingBetween) {
+            scope.pendingBetween = false;
+            i = printToken(i, scope);
+          } else if (scope.clause == Clause.WHERE || scope.clause == Clause.HAVING) {
+            out.newline(scope.colIndent);
+            out.write("AND", true);
+            i++;
+          } else if (scope.clause == Clause.ON) {
+            out.newline(scope.condIndent);
+            out.write("AND", true);
+            i++;
+          } else {
+            i = printToken(i, scope);
+          }
+        }
+        default -> {
+          int joinLength = joinLength(i, end);
+          if (joinLength > 0) {
+            out.newline(scope.clauseIndent);
+            out.write(joinWords(i, joinLength), true);
+            scope.clause = Clause.JOIN;
+            i += joinLength;
+          } else {
+            i = printToken(i, scope);
+          }
+        }
+      }
+    }
+  }
+
+  private int startClause(int i, int length, String keyword, Scope scope, Clause clause) {
+    out.newline(scope.clauseIndent);
+    out.write(keyword, true);
+    out.newline(scope.colIndent);
+    scope.clause = clause;
+    return i + length;
+  }
+
+  // ========== TOKENS ==========
+
+  /**
+   * Print a single token (or a group that starts at it) without any
+   * clause-level line breaking. Returns the index of the next token.
+   */
+  private int printToken(int i, Scope scope) {
+    SqlToken token = tokens.get(i);
+
+    switch (token.getType()) {
+      case OPEN_PAREN -> {
+        int close = token.getMatch();
+        if (close > i && close < scope.end && isWord(i + 1, close, "SELECT")) {
+          printSubquery(i, close, scope);
+          return close + 1;
+        }
+        scope.parenDepth++;
+        out.write("(", token.hasSpaceBefore());
+        return i + 1;
+      }
+      case CLOSE_PAREN -> {
+        scope.parenDepth = Math.max(0, scope.parenDepth - 1);
+        out.write(")", token.hasSpaceBefore());
+        return i + 1;
+      }
+      case WORD -> {
+        return printWord(i, scope);
+      }
+      default -> {
+        out.write(token.getText(), token.hasSpaceBefore());
+        return i + 1;
+      }
+    }
+  }
+
+  private int printWord(int i, Scope scope) {
+    SqlToken token = tokens.get(i);
+    String upper = token.getText().toUpperCase();
+
+    switch (upper) {
+      case "CASE" -> {
+        int caseIndent = out.atLineStart() ? out.lineIndent() : out.lineIndent() + INDENT;
+        out.newline(caseIndent);
+        out.write("CASE", token.hasSpaceBefore());
+        scope.cases.push(caseIndent);
+        return i + 1;
+      }
+      case "WHEN", "ELSE" -> {
+        if (!scope.cases.isEmpty()) {
+          out.newline(scope.cases.peek() + INDENT);
+        }
+        out.write(upper, token.hasSpaceBefore());
+        return i + 1;
+      }
+      case "END" -> {
+        if (!scope.cases.isEmpty()) {
+          out.newline(scope.cases.pop());
+        }
+        out.write("END", token.hasSpaceBefore());
+        return i + 1;
+      }
+      case "OVER" -> {
+        SqlToken next = i + 1 < scope.end ? tokens.get(i + 1) : null;
+        if (next != null && next.getType() == SqlToken.Type.OPEN_PAREN
+            && next.getMatch() > i && next.getMatch() < scope.end) {
+          printOver(i, next.getMatch(), scope);
+          return next.getMatch() + 1;
+        }
+        out.write("OVER", token.hasSpaceBefore());
+        return i + 1;
+      }
+      case "AND" -> {
+        scope.pendingBetween = false;
+        out.write("AND", token.hasSpaceBefore());
+        return i + 1;
+      }
+      case "BETWEEN" -> {
+        scope.pendingBetween = true;
+        out.write("BETWEEN", token.hasSpaceBefore());
+        return i + 1;
+      }
+      case "ORDER", "GROUP", "PARTITION" -> {
+        if (isWord(i + 1, scope.end, "BY")) {
+          out.write(upper + " BY", token.hasSpaceBefore());
+          return i + 2;
+        }
+      }
+      default -> {
+        int joinLength = joinLength(i, scope.end);
+        if (joinLength > 0) {
+          out.write(joinWords(i, joinLength), token.hasSpaceBefore());
+          return i + joinLength;
+        }
+        if (upper.equals("UNION") && isWord(i + 1, scope.end, "ALL")) {
+          out.write("UNION ALL", token.hasSpaceBefore());
+          return i + 2;
+        }
+      }
+    }
+
+    out.write(KEYWORDS.contains(upper) ? upper : token.getText(), token.hasSpaceBefore());
+    return i + 1;
+  }
+
+  /**
+   * ( SELECT ... ) - SELECT on its own line at the column indent,
+   * closing paren back at the clause indent
+   */
+  private void printSubquery(int open, int close, Scope scope) {
+    out.write("(", tokens.get(open).hasSpaceBefore());
+    out.newline(scope.colIndent);
+    printQuery(open + 1, close, scope.depth + 1);
+    out.newline(scope.clauseIndent);
+    out.write(")", false);
+  }
+
+  /**
+   * OVER ( PARTITION BY ... ORDER BY ... ) - OVER on a new line,
+   * PARTITION BY / ORDER BY inside it, ORDER BY items one per line
+   */
+  private void printOver(int overIndex, int close, Scope scope) {
+    int overIndent = out.lineIndent() + INDENT;
+    int innerIndent = overIndent + INDENT;
+
+    out.newline(overIndent);
+    out.write("OVER", true);
+    out.write("(", true);
+
+    Scope inner = new Scope(close, scope.depth, overIndent);
+    boolean inOrderBy = false;
+    int i = overIndex + 2;
+
+    while (i < close) {
+      SqlToken token = tokens.get(i);
+
+      if (inner.atTopLevel()) {
+        if (isWord(i, close, "PARTITION") && isWord(i + 1, close, "BY")) {
+          out.newline(innerIndent);
+          out.write("PARTITION BY", true);
+          inOrderBy = false;
+          i += 2;
+          continue;
+        }
+        if (isWord(i, close, "ORDER") && isWord(i + 1, close, "BY")) {
+          out.newline(innerIndent);
+          out.write("ORDER BY", true);
+          out.newline(innerIndent + INDENT);
+          inOrderBy = true;
+          i += 2;
+          continue;
+        }
+        if (token.getType() == SqlToken.Type.COMMA && inOrderBy) {
+          out.write(",", false);
+          out.newline(innerIndent + INDENT);
+          i++;
+          continue;
+        }
+      }
+
+      i = printToken(i, inner);
+    }
+
+    out.newline(overIndent);
+    out.write(")", false);
+  }
+
+  // ========== HELPERS ==========
+
+  private boolean isWord(int i, int end, String upper) {
+    if (i >= end || i >= tokens.size()) return false;
+    SqlToken token = tokens.get(i);
+    return token.getType() == SqlToken.Type.WORD && token.getText().equalsIgnoreCase(upper);
+  }
+
+  /**
+   * Number of tokens in a join keyword sequence starting at i
+   * ([LEFT|RIGHT|INNER|FULL|CROSS] [OUTER] JOIN), or 0 if there is none
+   */
+  private int joinLength(int i, int end) {
+    int j = i;
+    if (j < end && tokens.get(j).getType() == SqlToken.Type.WORD
+        && JOIN_PREFIXES.contains(tokens.get(j).getText().toUpperCase())) {
+      j++;
+    }
+    if (isWord(j, end, "OUTER")) {
+      j++;
+    }
+    return isWord(j, end, "JOIN") ? j - i + 1 : 0;
+  }
+
+  private String joinWords(int i, int length) {
+    StringBuilder words = new StringBuilder();
+    for (int j = i; j < i + length; j++) {
+      if (j > i) words.append(' ');
+      words.append(tokens.get(j).getText().toUpperCase());
+    }
+    return words.toString();
+  }
+
+  /**
+   * Appends tokens to a single buffer, tracking the indent of the current line
+   */
+  private static class IndentWriter {
+    private final StringBuilder buffer;
+    private int lineIndent;
+    private boolean lineStart = true;
+
+    IndentWriter(int capacity, int firstLineIndent) {
+      this.buffer = new StringBuilder(capacity);
+      this.lineIndent = firstLineIndent;
+    }
+
+    void newline(int indent) {
+      lineIndent = indent;
+      if (buffer.length() == 0) return;
+      if (lineStart) {
+        // Nothing written on this line yet - just re-indent it
+        int lastBreak = buffer.lastIndexOf("\n");
+        buffer.setLength(lastBreak + 1);
+      } else {
+        buffer.append('\n');
+      }
+      for (int i = 0; i < indent; i++) {
+        buffer.append(' ');
+      }
+      lineStart = true;
+    }
+
+    void write(String text, boolean spaceBefore) {
+      if (!lineStart && spaceBefore) {
+        buffer.append(' ');
+      }
+      buffer.append(text);
+      lineStart = false;
+    }
+
+    boolean atLineStart() {
+      return lineStart;
+    }
+
+    int lineIndent() {
+      return lineIndent;
+    }
+
+    @Override
+    public String toString() {
+      return buffer.toString();
+    }
+  }
+}
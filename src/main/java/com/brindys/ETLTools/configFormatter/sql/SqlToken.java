@@ -0,0 +1,53 @@
+package com.brindys.ETLTools.configFormatter.sql;
+
+/**
+ * A single lexical token of a SQL query, as produced by {@link SqlTokenizer}.
+ */
+public class SqlToken {
+
+  public enum Type {
+    WORD,        // keywords, identifiers, numbers, $SCHEMA.table references
+    QUOTED,      // 'string', "identifier" or `identifier`
+    OPEN_PAREN,
+    CLOSE_PAREN,
+    COMMA,
+    SYMBOL       // operators and any other punctuation
+  }
+
+  private final Type type;
+  private final String text;
+  private final boolean spaceBefore;
+
+  // Index of the matching parenthesis, or -1 (set by the tokenizer)
+  int match = -1;
+
+  public SqlToken(Type type, String text, boolean spaceBefore) {
+    this.type = type;
+    this.text = text;
+    this.spaceBefore = spaceBefore;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Whether the token was preceded by whitespace in the input
+   */
+  public boolean hasSpaceBefore() {
+    return spaceBefore;
+  }
+
+  public int getMatch() {
+    return match;
+  }
+
+  @Override
+  public String toString() {
+    return type + "(" + text + ")";
+  }
+}
@@ -0,0 +1,99 @@
+package com.brindys.ETLTools.configFormatter.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a SQL query into tokens in a single left-to-right scan.
+ * Parentheses are paired as they are read, so callers can jump over
+ * a parenthesised group without rescanning it.
+ */
+public class SqlTokenizer {
+
+  private SqlTokenizer() {
+  }
+
+  public static List<SqlToken> tokenize(String query) {
+    List<SqlToken> tokens = new ArrayList<>(Math.max(16, query.length() / 4));
+    int[] openParens = new int[16];
+    int openCount = 0;
+
+    int n = query.length();
+    int i = 0;
+    boolean space = false;
+
+    while (i < n) {
+      char c = query.charAt(i);
+
+      if (Character.isWhitespace(c)) {
+        space = true;
+        i++;
+        continue;
+      }
+
+      int start = i;
+      SqlToken token;
+
+      if (isWordChar(c)) {
+        while (i < n && isWordChar(query.charAt(i))) i++;
+        token = new SqlToken(SqlToken.Type.WORD, query.substring(start, i), space);
+      } else if (c == '\'' || c == '"' || c == '`') {
+        i = skipQuoted(query, i, c);
+        token = new SqlToken(SqlToken.Type.QUOTED, query.substring(start, i), space);
+      } else if (c == '(') {
+        i++;
+        token = new SqlToken(SqlToken.Type.OPEN_PAREN, "(", space);
+        if (openCount == openParens.length) {
+          openParens = Arrays.copyOf(openParens, openCount * 2);
+        }
+        openParens[openCount++] = tokens.size();
+      } else if (c == ')') {
+        i++;
+        token = new SqlToken(SqlToken.Type.CLOSE_PAREN, ")", space);
+        if (openCount > 0) {
+          int open = openParens[--openCount];
+          tokens.get(open).match = tokens.size();
+          token.match = open;
+        }
+      } else if (c == ',') {
+        i++;
+        token = new SqlToken(SqlToken.Type.COMMA, ",", space);
+      } else {
+        while (i < n && isSymbolChar(query.charAt(i))) i++;
+        token = new SqlToken(SqlToken.Type.SYMBOL, query.substring(start, i), space);
+      }
+
+      tokens.add(token);
+      space = false;
+    }
+
+    return tokens;
+  }
+
+  private static int skipQuoted(String query, int i, char quote) {
+    int n = query.length();
+    i++;
+    while (i < n) {
+      if (query.charAt(i) == quote) {
+        // A doubled quote is an escaped quote inside the literal
+        if (i + 1 < n && query.charAt(i + 1) == quote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return n;
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+  }
+
+  private static boolean isSymbolChar(char c) {
+    return !Character.isWhitespace(c) && !isWordChar(c)
+        && c != '(' && c != ')' && c != ',' && c != '\'' && c != '"' && c != '`';
+  }
+}
@@ -0,0 +1,320 @@
+package com.brindys.ETLTools.support.github;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.connector.GitHubConnector;
+import org.kohsuke.github.connector.GitHubConnectorRequest;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wraps the REST connector of the GitHub client with three things it lacks:
+ * <ul>
+ *   <li>An on-disk HTTP cache. GETs carry If-None-Match with the cached
+ *   ETag, and a 304 is answered from disk. GitHub does not count 304s
+ *   against the rate limit.</li>
+ *   <li>Pacing. Once the remaining quota drops below pace-below, requests
+ *   are spread evenly over the time left until the quota resets.</li>
+ *   <li>Retries with exponential backoff for GETs, and for queries sent
+ *   with sendQuery, that fail with an IOException or a 5xx. Writes are not
+ *   retried here; the commit queue retries them.</li>
+ * </ul>
+ */
+@Slf4j
+public class CachingGitHubConnector implements GitHubConnector {
+
+  private static final String REMAINING = "X-RateLimit-Remaining";
+  private static final String RESET = "X-RateLimit-Reset";
+  // Longest single pause, so a bad reset header cannot stall a request for hours
+  private static final long MAX_PACE_MILLIS = 60_000;
+
+  /**
+   * What is kept on disk beside each cached body
+   */
+  static class CacheEntry {
+    public String etag;
+    public Map<String, List<String>> headers;
+  }
+
+  private final GitHubConnector delegate;
+  private final Path cacheDir;
+  private final int paceBelow;
+  private final int maxRetries;
+  private final long retryBaseMillis;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  // Quota as of the last response; -1 until one arrives
+  private volatile int remaining = -1;
+  private volatile long resetEpochMillis;
+
+  public CachingGitHubConnector(GitHubConnector delegate, Path cacheDir, int paceBelow,
+                                int maxRetries, long retryBaseMillis) throws IOException {
+    this.delegate = delegate;
+    this.cacheDir = Files.createDirectories(cacheDir);
+    this.paceBelow = paceBelow;
+    this.maxRetries = maxRetries;
+    this.retryBaseMillis = retryBaseMillis;
+  }
+
+  @Override
+  public GitHubConnectorResponse send(GitHubConnectorRequest request) throws IOException {
+    boolean get = "GET".equals(request.method());
+    String key = get ? key(request.url()) : null;
+    CacheEntry cached = get ? readEntry(key) : null;
+    GitHubConnectorRequest outgoing = cached != null
+        ? new ConditionalRequest(request, cached.etag)
+        : request;
+
+    GitHubConnectorResponse response = sendWithRetries(outgoing, get);
+    trackQuota(response);
+
+    if (!get) {
+      return response;
+    }
+    if (response.statusCode() == 304 && cached != null) {
+      response.close();
+      byte[] body = Files.readAllBytes(cacheDir.resolve(key + ".body"));
+      Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      headers.putAll(cached.headers);
+      // Quota headers from the 304 are newer than the cached ones
+      copyHeader(response, headers, REMAINING);
+      copyHeader(response, headers, RESET);
+      return new BufferedResponse(request, 200, headers, body);
+    }
+    String etag = response.header("ETag");
+    if (response.statusCode() != 200 || etag == null) {
+      return response;
+    }
+
+    byte[] body;
+    try (InputStream in = response.bodyStream()) {
+      body = in != null ? in.readAllBytes() : new byte[0];
+    } finally {
+      response.close();
+    }
+    Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    headers.putAll(response.allHeaders());
+    // The body is stored decoded
+    headers.remove("Content-Encoding");
+    headers.remove("Content-Length");
+    writeEntry(key, etag, headers, body);
+    return new BufferedResponse(request, 200, headers, body);
+  }
+
+  /**
+   * Sends a request that only reads though it is not a GET, such as a
+   * GraphQL query: paced and retried like a GET, but never cached
+   */
+  public GitHubConnectorResponse sendQuery(GitHubConnectorRequest request) throws IOException {
+    GitHubConnectorResponse response = sendWithRetries(request, true);
+    trackQuota(response);
+    return response;
+  }
+
+  private GitHubConnectorResponse sendWithRetries(GitHubConnectorRequest request, boolean retryable)
+      throws IOException {
+    for (int attempt = 0; ; attempt++) {
+      pace();
+      boolean last = !retryable || attempt >= maxRetries;
+      try {
+        GitHubConnectorResponse response = delegate.send(request);
+        if (response.statusCode() < 500 || last) {
+          return response;
+        }
+        log.warn("GitHub returned {} for {} {}, retrying", response.statusCode(), request.method(), request.url());
+        response.close();
+      } catch (IOException e) {
+        if (last) {
+          throw e;
+        }
+        log.warn("GitHub request {} {} failed, retrying: {}", request.method(), request.url(), e.getMessage());
+      }
+      sleep(retryBaseMillis << attempt);
+    }
+  }
+
+  /**
+   * Waits before a request when the quota is low: until the reset if it is
+   * used up, otherwise the time left divided by the requests left
+   */
+  private void pace() throws IOException {
+    int left = remaining;
+    if (left < 0 || left >= paceBelow) {
+      return;
+    }
+    long untilReset = resetEpochMillis - System.currentTimeMillis();
+    if (untilReset <= 0) {
+      return;
+    }
+    long wait = left == 0 ? untilReset : untilReset / left;
+    if (wait > 0) {
+      log.info("GitHub quota low ({} left), pausing {} ms", left, Math.min(wait, MAX_PACE_MILLIS));
+      sleep(Math.min(wait, MAX_PACE_MILLIS));
+    }
+  }
+
+  private void trackQuota(GitHubConnectorResponse response) {
+    String left = response.header(REMAINING);
+    String reset = response.header(RESET);
+    if (left != null && reset != null) {
+      try {
+        remaining = Integer.parseInt(left);
+        resetEpochMillis = Long.parseLong(reset) * 1000;
+      } catch (NumberFormatException e) {
+        log.debug("Ignoring malformed rate limit headers: {} / {}", left, reset);
+      }
+    }
+  }
+
+  private static void copyHeader(GitHubConnectorResponse from, Map<String, List<String>> to, String name) {
+    String value = from.header(name);
+    if (value != null) {
+      to.put(name, List.of(value));
+    }
+  }
+
+  private static void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting to call GitHub", e);
+    }
+  }
+
+  // ========== DISK CACHE ==========
+
+  private static String key(URL url) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private CacheEntry readEntry(String key) {
+    Path meta = cacheDir.resolve(key + ".json");
+    if (!Files.exists(meta) || !Files.exists(cacheDir.resolve(key + ".body"))) {
+      return null;
+    }
+    try {
+      return objectMapper.readValue(meta.toFile(), CacheEntry.class);
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable GitHub cache entry {}: {}", meta, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Writes body then metadata, each through a temp file, so a reader never
+   * pairs new metadata with an old or partial body
+   */
+  private void writeEntry(String key, String etag, Map<String, List<String>> headers, byte[] body) {
+    CacheEntry entry = new CacheEntry();
+    entry.etag = etag;
+    entry.headers = headers;
+    try {
+      Files.deleteIfExists(cacheDir.resolve(key + ".json"));
+      Path bodyTmp = Files.createTempFile(cacheDir, key, ".tmp");
+      Files.write(bodyTmp, body);
+      Files.move(bodyTmp, cacheDir.resolve(key + ".body"), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      Path metaTmp = Files.createTempFile(cacheDir, key, ".tmp");
+      objectMapper.writeValue(metaTmp.toFile(), entry);
+      Files.move(metaTmp, cacheDir.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("Could not cache GitHub response: {}", e.getMessage());
+    }
+  }
+
+  // ========== REQUEST / RESPONSE WRAPPERS ==========
+
+  /**
+   * The original request plus If-None-Match
+   */
+  private static class ConditionalRequest implements GitHubConnectorRequest {
+    private final GitHubConnectorRequest request;
+    private final Map<String, List<String>> headers;
+
+    ConditionalRequest(GitHubConnectorRequest request, String etag) {
+      this.request = request;
+      this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      this.headers.putAll(request.allHeaders());
+      this.headers.put("If-None-Match", new ArrayList<>(List.of(etag)));
+    }
+
+    @Override
+    public String method() {
+      return request.method();
+    }
+
+    @Override
+    public Map<String, List<String>> allHeaders() {
+      return headers;
+    }
+
+    @Override
+    public String header(String name) {
+      List<String> values = headers.get(name);
+      return values == null || values.isEmpty() ? null : String.join(",", values);
+    }
+
+    @Override
+    public String contentType() {
+      return request.contentType();
+    }
+
+    @Override
+    public InputStream body() {
+      return request.body();
+    }
+
+    @Override
+    public URL url() {
+      return request.url();
+    }
+
+    @Override
+    public boolean hasBody() {
+      return request.hasBody();
+    }
+  }
+
+  /**
+   * A response whose body is already in memory
+   */
+  private static class BufferedResponse extends GitHubConnectorResponse {
+    private final byte[] body;
+
+    BufferedResponse(GitHubConnectorRequest request, int statusCode, Map<String, List<String>> headers, byte[] body) {
+      super(request, statusCode, headers);
+      this.body = body;
+    }
+
+    @Override
+    public InputStream bodyStream() {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.brindys.ETLTools.support.github;
+
+import com.brindys.ETLTools.config.GitHubConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.connector.GitHubConnectorRequest;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal client for GitHub's GraphQL API, for reads the REST client can
+ * only do one call per file. Queries go through their own
+ * CachingGitHubConnector, so they are paced and retried like REST reads,
+ * and wait out rate limits the same way.
+ */
+@Component
+@Slf4j
+public class GitHubGraphQLClient {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Autowired
+  private CachingGitHubConnector graphQLConnector;
+
+  @Autowired
+  private GitHubConfig config;
+
+  @Value("${github.token}")
+  private String githubToken;
+
+  /**
+   * Runs the query and returns its "data" node. GraphQL errors come back
+   * with a 200, so they are turned into an IOException here.
+   */
+  public JsonNode query(String query, Map<String, Object> variables) throws IOException {
+    QueryRequest request = new QueryRequest(URI.create(config.getApiUrl() + "/graphql").toURL(), githubToken,
+        objectMapper.writeValueAsBytes(Map.of("query", query, "variables", variables)));
+    while (true) {
+      long wait;
+      try (GitHubConnectorResponse response = graphQLConnector.sendQuery(request)) {
+        String body;
+        try (InputStream in = response.bodyStream()) {
+          body = in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : "";
+        }
+        JsonNode result = response.statusCode() == 200 ? objectMapper.readTree(body) : null;
+        if (!rateLimited(response, result)) {
+          return data(response.statusCode(), body, result);
+        }
+        wait = GitHubLimitHandlers.waitMillis(response);
+      }
+      log.warn("GitHub GraphQL rate limit reached, waiting {} ms", wait);
+      GitHubLimitHandlers.sleep(wait);
+    }
+  }
+
+  /**
+   * A 403 or 429 for the primary or secondary limit, or a primary limit
+   * reported as a GraphQL error
+   */
+  private static boolean rateLimited(GitHubConnectorResponse response, JsonNode result) {
+    int status = response.statusCode();
+    if (status == 403 || status == 429) {
+      return response.header("Retry-After") != null || "0".equals(response.header("X-RateLimit-Remaining"));
+    }
+    return result != null && "RATE_LIMITED".equals(result.path("errors").path(0).path("type").asText());
+  }
+
+  private static JsonNode data(int status, String body, JsonNode result) throws IOException {
+    if (status != 200) {
+      throw new IOException("GitHub GraphQL API returned HTTP " + status + ": " + body);
+    }
+    JsonNode errors = result.path("errors");
+    if (errors.isArray() && errors.size() > 0) {
+      throw new IOException("GitHub GraphQL error: " + errors.get(0).path("message").asText());
+    }
+    return result.path("data");
+  }
+
+  /**
+   * A GraphQL POST, replayable so the connector can retry it
+   */
+  private static class QueryRequest implements GitHubConnectorRequest {
+    private final URL url;
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final byte[] body;
+
+    QueryRequest(URL url, String token, byte[] body) {
+      this.url = url;
+      this.body = body;
+      headers.put("Authorization", List.of("Bearer " + token));
+      headers.put("Content-Type", List.of("application/json"));
+    }
+
+    @Override
+    public String method() {
+      return "POST";
+    }
+
+    @Override
+    public Map<String, List<String>> allHeaders() {
+      return headers;
+    }
+
+    @Override
+    public String header(String name) {
+      List<String> values = headers.get(name);
+      return values == null || values.isEmpty() ? null : String.join(",", values);
+    }
+
+    @Override
+    public String contentType() {
+      return "application/json";
+    }
+
+    @Override
+    public InputStream body() {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public URL url() {
+      return url;
+    }
+
+    @Override
+    public boolean hasBody() {
+      return true;
+    }
+  }
+}
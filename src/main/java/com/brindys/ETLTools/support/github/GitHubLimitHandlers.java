@@ -0,0 +1,73 @@
+package com.brindys.ETLTools.support.github;
+
+import lombok.extern.slf4j.Slf4j;
+import org.kohsuke.github.GitHubAbuseLimitHandler;
+import org.kohsuke.github.GitHubRateLimitHandler;
+import org.kohsuke.github.connector.GitHubConnectorResponse;
+
+import java.io.IOException;
+
+/**
+ * Waits out GitHub's rate and abuse (secondary) limits instead of failing.
+ * The two handlers are given to the REST client, which retries the request
+ * once they return; GitHubGraphQLClient uses waitMillis directly.
+ */
+@Slf4j
+public final class GitHubLimitHandlers {
+
+  private static final String RETRY_AFTER = "Retry-After";
+  private static final String RESET = "X-RateLimit-Reset";
+  // When neither header says how long, as GitHub advises for secondary limits
+  private static final long DEFAULT_WAIT_MILLIS = 60_000;
+
+  private GitHubLimitHandlers() {
+  }
+
+  public static class RateLimit extends GitHubRateLimitHandler {
+    @Override
+    public void onError(GitHubConnectorResponse response) throws IOException {
+      long wait = waitMillis(response);
+      log.warn("GitHub rate limit reached, waiting {} ms for {}", wait, response.request().url());
+      sleep(wait);
+    }
+  }
+
+  public static class AbuseLimit extends GitHubAbuseLimitHandler {
+    @Override
+    public void onError(GitHubConnectorResponse response) throws IOException {
+      long wait = waitMillis(response);
+      log.warn("GitHub secondary rate limit reached, waiting {} ms for {}", wait, response.request().url());
+      sleep(wait);
+    }
+  }
+
+  /**
+   * How long to wait before retrying a limited request: Retry-After if
+   * GitHub sent one, otherwise until the quota resets
+   */
+  public static long waitMillis(GitHubConnectorResponse response) {
+    try {
+      String retryAfter = response.header(RETRY_AFTER);
+      if (retryAfter != null) {
+        return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+      }
+      String reset = response.header(RESET);
+      if (reset != null) {
+        // The reset is whole seconds, so wait out the last one too
+        return Math.max(0, Long.parseLong(reset.trim()) * 1000 - System.currentTimeMillis()) + 1000;
+      }
+    } catch (NumberFormatException e) {
+      log.debug("Ignoring malformed rate limit headers from GitHub: {}", e.getMessage());
+    }
+    return DEFAULT_WAIT_MILLIS;
+  }
+
+  static void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the GitHub rate limit", e);
+    }
+  }
+}
@@ -4,137 +4,173 @@ import com.brindys.ETLTools.config.GitHubConfig;
 import com.brindys.ETLTools.support.github.dto.CommitRequest;
 import com.brindys.ETLTools.support.github.dto.CommitResponse;
 import com.brindys.ETLTools.support.github.dto.MappingHistory;
+import com.brindys.ETLTools.support.github.dto.SnapshotDelta;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.kohsuke.github.*;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;  // ADD THIS
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service
 @Slf4j
 public class GitHubService {
 
+  private static final String MAPPINGS_DIR = "mappings";
+  private static final String DELTA_SUFFIX = ".delta.json";
+
   @Autowired
   private GitHub gitHub;
 
   @Autowired
   private GitHubConfig config;
 
+  @Autowired
+  private MappingHistoryIndex historyIndex;
+
+  @Autowired
+  private SnapshotBlobStore blobStore;
+
   private final ObjectMapper objectMapper = new ObjectMapper();
 
-  @Value("${github.token}")
-  private String githubToken;
+  // Fetches the files of one restore side by side
+  private final ExecutorService restorePool = Executors.newFixedThreadPool(4, r -> {
+    Thread thread = new Thread(r, "github-restore");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   /**
-   * Commit a visit type mapping to GitHub
+   * Commit a whole visit type mapping to GitHub as a full checkpoint, which
+   * later deltas build on
    */
-  public CommitResponse commitMapping(CommitRequest request) {
+  public synchronized CommitResponse commitMapping(CommitRequest request) {
     try {
-      log.info("Committing mapping to GitHub: {}", request.getMessage());
+      String jsonContent = objectMapper.writeValueAsString(request.getMapping());
+      return commit(".json", jsonContent, request.getMessage(), request.getAuthor());
+    } catch (IOException e) {
+      return failed(e);
+    }
+  }
 
-      GHRepository repo = gitHub.getRepository(config.getFullRepoPath());
+  /**
+   * Commit only the keys changed since base, a mapping file this service
+   * committed earlier. changes maps each changed key to its new value, or
+   * to null if it was removed.
+   */
+  public synchronized CommitResponse commitDelta(String base, Map<String, String> changes,
+                                                 String message, String author) {
+    try {
+      List<String> chain = new ArrayList<>();
+      String checkpoint = base;
+      if (base.endsWith(DELTA_SUFFIX)) {
+        // Kept in the blob store when it was committed, so read locally
+        SnapshotDelta previous = readDelta(fetch(base));
+        chain.addAll(previous.getChain());
+        chain.add(base);
+        checkpoint = previous.getCheckpoint();
+      }
+      Map<String, Object> set = new LinkedHashMap<>();
+      List<String> removed = new ArrayList<>();
+      changes.forEach((key, value) -> {
+        if (value == null) {
+          removed.add(key);
+        } else {
+          set.put(key, value);
+        }
+      });
+      String jsonContent = objectMapper.writeValueAsString(new SnapshotDelta(checkpoint, chain, set, removed));
+      return commit(DELTA_SUFFIX, jsonContent, message, author);
+    } catch (IOException e) {
+      return failed(e);
+    }
+  }
 
-      // Convert mapping to JSON
-      String jsonContent = objectMapper.writerWithDefaultPrettyPrinter()
-          .writeValueAsString(request.getMapping());
+  private CommitResponse commit(String suffix, String jsonContent, String message, String author)
+      throws IOException {
+    log.info("Committing mapping to GitHub: {}", message);
 
-      // Create filename with timestamp
-      String timestamp = LocalDateTime.now()
-          .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-      String filename = "mappings/visit_type_mapping_" + timestamp + ".json";
+    GHRepository repo = gitHub.getRepository(config.getFullRepoPath());
 
-      // Build commit message
-      String commitMessage = request.getMessage();
-      if (request.getAuthor() != null && !request.getAuthor().isEmpty()) {
-        commitMessage += " (by " + request.getAuthor() + ")";
-      }
+    // Create filename with timestamp
+    String timestamp = LocalDateTime.now()
+        .format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+    String name = "visit_type_mapping_" + timestamp + suffix;
+    String filename = MAPPINGS_DIR + "/" + name;
+
+    // Build commit message
+    String commitMessage = message;
+    if (author != null && !author.isEmpty()) {
+      commitMessage += " (by " + author + ")";
+    }
 
-      // Commit to GitHub
-      GHContentBuilder contentBuilder = repo.createContent()
-          .content(jsonContent)
-          .path(filename)
-          .branch(config.getBranch())
-          .message(commitMessage);
+    // Commit to GitHub
+    GHContentBuilder contentBuilder = repo.createContent()
+        .content(jsonContent)
+        .path(filename)
+        .branch(config.getBranch())
+        .message(commitMessage);
 
-      GHContentUpdateResponse updateResponse = contentBuilder.commit();
-      GHContent content = updateResponse.getContent();
+    GHContentUpdateResponse updateResponse = contentBuilder.commit();
+    GHContent content = updateResponse.getContent();
 
-      log.info("Successfully committed mapping: {}", filename);
+    byte[] bytes = jsonContent.getBytes(StandardCharsets.UTF_8);
+    log.info("Successfully committed mapping: {} ({} bytes)", filename, bytes.length);
+    try {
+      // Keep a copy so restoring this version needs no download
+      blobStore.put(content.getSha(), new ByteArrayInputStream(bytes));
+      historyIndex.record(filename, updateResponse.getCommit().getSHA1(), content.getSha(), commitMessage,
+          updateResponse.getCommit().getAuthor().getName(), LocalDateTime.now(), bytes.length);
+    } catch (IOException | RuntimeException e) {
+      // The next scheduled refresh picks the file up
+      log.warn("Could not index committed mapping {}: {}", filename, e.getMessage());
+    }
 
-      CommitResponse response = new CommitResponse();
-      response.setSuccess(true);
-      response.setMessage("Successfully committed to GitHub");
-      response.setCommitSha(updateResponse.getCommit().getSHA1());
-      response.setCommitUrl(content.getHtmlUrl());
-      response.setTimestamp(LocalDateTime.now());
+    CommitResponse response = new CommitResponse();
+    response.setSuccess(true);
+    response.setMessage("Successfully committed to GitHub");
+    response.setCommitSha(updateResponse.getCommit().getSHA1());
+    response.setCommitUrl(content.getHtmlUrl());
+    response.setFilename(name);
+    response.setTimestamp(LocalDateTime.now());
 
-      return response;
+    return response;
+  }
 
-    } catch (IOException e) {
-      log.error("Error committing to GitHub", e);
+  private static CommitResponse failed(IOException e) {
+    log.error("Error committing to GitHub", e);
 
-      CommitResponse response = new CommitResponse();
-      response.setSuccess(false);
-      response.setMessage("Failed to commit: " + e.getMessage());
-      response.setTimestamp(LocalDateTime.now());
+    CommitResponse response = new CommitResponse();
+    response.setSuccess(false);
+    response.setMessage("Failed to commit: " + e.getMessage());
+    response.setTimestamp(LocalDateTime.now());
 
-      return response;
-    }
+    return response;
   }
 
   /**
-   * Get the history of all committed mappings
+   * Get the history of all committed mappings, from the local index
    */
   public List<MappingHistory> getMappingHistory() throws IOException {
-    log.info("Fetching mapping history from GitHub");
-
-    GHRepository repo = gitHub.getRepository(config.getFullRepoPath());
-
-    // Get all files in the mappings directory
-    List<GHContent> contents = repo.getDirectoryContent("mappings", config.getBranch());
-
-    // Convert to MappingHistory objects and sort by date (newest first)
-    List<MappingHistory> history = contents.stream()
-        .filter(content -> content.getName().endsWith(".json"))
-        .map(content -> {
-          try {
-            // Get commit info for this file
-            PagedIterable<GHCommit> commits = repo.queryCommits()
-                .path(content.getPath())
-                .pageSize(1)
-                .list();
-
-            GHCommit lastCommit = commits.iterator().next();
-
-            MappingHistory history1 = new MappingHistory();
-            history1.setFilename(content.getName());
-            history1.setCommitMessage(lastCommit.getCommitShortInfo().getMessage());
-            history1.setAuthor(lastCommit.getCommitShortInfo().getAuthor().getName());
-            history1.setDate(LocalDateTime.ofInstant(
-                lastCommit.getCommitDate().toInstant(),
-                ZoneId.systemDefault()));
-            history1.setDownloadUrl(content.getDownloadUrl());
-
-            return history1;
-          } catch (IOException e) {
-            log.error("Error getting commit info for: {}", content.getName(), e);
-            return null;
-          }
-        })
-        .filter(h -> h != null)
-        .sorted((h1, h2) -> h2.getDate().compareTo(h1.getDate())) // Newest first
-        .collect(Collectors.toList());
-
-    log.info("Found {} mapping files", history.size());
-    return history;
+    return historyIndex.history();
   }
 
   /**
@@ -148,28 +184,107 @@ public class GitHubService {
   }
 
   /**
-   * Load a specific mapping from GitHub
-   */
-  /**
-   * Load a specific mapping from GitHub
-   */
-  /**
-   * Load a specific mapping from GitHub
+   * Load a specific mapping from GitHub. A delta file is rebuilt from its
+   * checkpoint and the deltas between them, which are fetched in parallel.
+   * Files come from the local blob store when their sha is known, so a
+   * version restored before needs no network at all.
    */
   public Map<String, String> loadMapping(String filename) throws IOException {
     log.info("Loading mapping from GitHub: {}", filename);
 
-    GHRepository repo = gitHub.getRepository(config.getFullRepoPath());
+    Map<String, String> mapping = new HashMap<>();
+    if (!filename.endsWith(DELTA_SUFFIX)) {
+      readSnapshot(fetch(filename), mapping);
+      return mapping;
+    }
+    SnapshotDelta delta = readDelta(fetch(filename));
 
-    // getContent only takes the path, it uses the default branch automatically
-    // or you need to use getFileContent with a ref
-    GHContent content = repo.getFileContent("mappings/" + filename, config.getBranch());
+    // Start every fetch, then apply in chain order as they arrive
+    Future<Path> checkpoint = restorePool.submit(() -> fetch(delta.getCheckpoint()));
+    List<Future<Path>> chain = new ArrayList<>();
+    for (String name : delta.getChain()) {
+      chain.add(restorePool.submit(() -> fetch(name)));
+    }
+    readSnapshot(await(checkpoint), mapping);
+    for (Future<Path> file : chain) {
+      apply(mapping, readDelta(await(file)));
+    }
+    apply(mapping, delta);
+    return mapping;
+  }
 
-    String jsonContent = new String(content.read().readAllBytes());
+  /**
+   * Reads a full snapshot token by token straight into the mapping, without
+   * building a tree or an intermediate map
+   */
+  private void readSnapshot(Path file, Map<String, String> mapping) throws IOException {
+    try (JsonParser parser = objectMapper.getFactory().createParser(file.toFile())) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Not a mapping snapshot: " + file);
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String key = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if (value == JsonToken.VALUE_NULL) {
+          mapping.put(key, null);
+        } else if (value.isScalarValue()) {
+          mapping.put(key, parser.getValueAsString());
+        } else {
+          mapping.put(key, parser.readValueAsTree().toString());
+        }
+      }
+    }
+  }
 
-    @SuppressWarnings("unchecked")
-    Map<String, String> mapping = objectMapper.readValue(jsonContent, Map.class);
+  private SnapshotDelta readDelta(Path file) throws IOException {
+    return objectMapper.readValue(file.toFile(), SnapshotDelta.class);
+  }
 
-    return mapping;
+  private static void apply(Map<String, String> mapping, SnapshotDelta delta) {
+    delta.getSet().forEach((key, value) -> mapping.put(key, value != null ? String.valueOf(value) : null));
+    delta.getRemoved().forEach(mapping::remove);
+  }
+
+  /**
+   * The file's content in the blob store, fetching it first if needed. A
+   * sha already in the history index skips the contents lookup.
+   */
+  private Path fetch(String filename) throws IOException {
+    String sha = historyIndex.blobSha(filename).orElse(null);
+    Path stored = sha != null ? blobStore.get(sha) : null;
+    if (stored != null) {
+      return stored;
+    }
+    GHRepository repo = gitHub.getRepository(config.getFullRepoPath());
+    if (sha == null) {
+      sha = repo.getFileContent(MAPPINGS_DIR + "/" + filename, config.getBranch()).getSha();
+      stored = blobStore.get(sha);
+      if (stored != null) {
+        return stored;
+      }
+    }
+    // The blob API serves files too large for the contents API
+    try (InputStream in = repo.readBlob(sha)) {
+      return blobStore.put(sha, in);
+    }
+  }
+
+  private static Path await(Future<Path> file) throws IOException {
+    try {
+      return file.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted loading mapping", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException io) {
+        throw io;
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    restorePool.shutdownNow();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,218 @@
+package com.brindys.ETLTools.support.github;
+
+import com.brindys.ETLTools.config.GitHubConfig;
+import com.brindys.ETLTools.support.github.dto.MappingHistory;
+import com.brindys.ETLTools.support.github.model.MappingHistoryEntry;
+import com.brindys.ETLTools.support.github.repository.MappingHistoryEntryRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Local index of the mapping snapshot files on GitHub, kept in SQLite so
+ * history reads never leave the machine. A background refresh checks the
+ * branch head; when it has moved since the last refresh, only files that
+ * are new or whose blob changed are looked up, all in one batched query.
+ */
+@Service
+@Slf4j
+public class MappingHistoryIndex {
+
+  private static final String MAPPINGS_DIR = "mappings";
+  // Files looked up per history query; GitHub caps a query's total cost
+  private static final int HISTORY_BATCH_SIZE = 100;
+
+  private static final String HEAD_AND_TREE_QUERY = """
+      query($owner: String!, $name: String!, $ref: String!, $dir: String!) {
+        repository(owner: $owner, name: $name) {
+          ref(qualifiedName: $ref) { target { oid } }
+          object(expression: $dir) { ... on Tree { entries { name path oid object { ... on Blob { byteSize } } } } }
+        }
+      }
+      """;
+
+  @Autowired
+  private GitHubGraphQLClient graphQL;
+
+  @Autowired
+  private GitHubConfig config;
+
+  @Autowired
+  private MappingHistoryEntryRepository entryRepo;
+
+  // Branch head at the last successful refresh; null until the first one
+  private volatile String lastSeenHead;
+
+  /**
+   * Indexed history, newest first. Refreshes first if the index has never
+   * been filled, e.g. right after startup.
+   */
+  public List<MappingHistory> history() throws IOException {
+    if (lastSeenHead == null && entryRepo.count() == 0) {
+      refresh();
+    }
+    return entryRepo.findAllByOrderByCommittedAtDesc().stream()
+        .map(this::toHistory)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Records a file this service just committed, so it shows up without a
+   * refresh
+   */
+  public void record(String path, String commitSha, String blobSha, String message, String author,
+                     LocalDateTime committedAt, long size) {
+    MappingHistoryEntry entry = new MappingHistoryEntry();
+    entry.setFilename(path.substring(path.lastIndexOf('/') + 1));
+    entry.setPath(path);
+    entry.setCommitSha(commitSha);
+    entry.setBlobSha(blobSha);
+    entry.setCommitMessage(message);
+    entry.setAuthor(author);
+    entry.setCommittedAt(committedAt);
+    entry.setSize(size);
+    entryRepo.save(entry);
+  }
+
+  /**
+   * Blob sha of an indexed file, read locally
+   */
+  public Optional<String> blobSha(String filename) {
+    return entryRepo.findById(filename).map(MappingHistoryEntry::getBlobSha);
+  }
+
+  @Scheduled(initialDelayString = "${github.history.initial-delay-ms:0}",
+      fixedDelayString = "${github.history.refresh-ms:300000}")
+  public void scheduledRefresh() {
+    try {
+      refresh();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not refresh mapping history from GitHub: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Brings the index up to date with the branch. One call when the head
+   * has not moved, two when files were added.
+   */
+  public synchronized void refresh() throws IOException {
+    JsonNode repository = graphQL.query(HEAD_AND_TREE_QUERY, Map.of(
+        "owner", config.getRepoOwner(),
+        "name", config.getRepoName(),
+        "ref", "refs/heads/" + config.getBranch(),
+        "dir", config.getBranch() + ":" + MAPPINGS_DIR)).path("repository");
+
+    String head = repository.path("ref").path("target").path("oid").asText(null);
+    if (head == null) {
+      throw new IOException("Branch not found: " + config.getBranch());
+    }
+    if (head.equals(lastSeenHead)) {
+      return;
+    }
+
+    // Files in the directory now, with their blob shas and sizes
+    Map<String, JsonNode> files = new LinkedHashMap<>();
+    for (JsonNode entry : repository.path("object").path("entries")) {
+      if (entry.path("name").asText().endsWith(".json")) {
+        files.put(entry.path("name").asText(), entry);
+      }
+    }
+
+    Map<String, MappingHistoryEntry> indexed = new HashMap<>();
+    entryRepo.findAll().forEach(e -> indexed.put(e.getFilename(), e));
+
+    Set<String> removed = indexed.keySet().stream()
+        .filter(name -> !files.containsKey(name))
+        .collect(Collectors.toSet());
+    List<JsonNode> stale = new ArrayList<>();
+    files.forEach((name, file) -> {
+      MappingHistoryEntry known = indexed.get(name);
+      if (known == null || !file.path("oid").asText().equals(known.getBlobSha())) {
+        stale.add(file);
+      }
+    });
+
+    List<MappingHistoryEntry> fetched = new ArrayList<>();
+    for (int from = 0; from < stale.size(); from += HISTORY_BATCH_SIZE) {
+      fetchLastCommits(head, stale.subList(from, Math.min(from + HISTORY_BATCH_SIZE, stale.size())), fetched);
+    }
+    entryRepo.deleteAllById(removed);
+    entryRepo.saveAll(fetched);
+    lastSeenHead = head;
+
+    log.info("Refreshed mapping history at {}: {} files, {} fetched, {} removed",
+        head, files.size(), fetched.size(), removed.size());
+  }
+
+  /**
+   * Looks up the last commit touching each file in one query, one aliased
+   * history field per file
+   */
+  private void fetchLastCommits(String head, List<JsonNode> files, List<MappingHistoryEntry> into)
+      throws IOException {
+    StringBuilder params = new StringBuilder("$owner: String!, $name: String!, $head: GitObjectID!");
+    StringBuilder fields = new StringBuilder();
+    Map<String, Object> variables = new HashMap<>();
+    variables.put("owner", config.getRepoOwner());
+    variables.put("name", config.getRepoName());
+    variables.put("head", head);
+    for (int i = 0; i < files.size(); i++) {
+      params.append(", $p").append(i).append(": String!");
+      fields.append("f").append(i).append(": history(first: 1, path: $p").append(i)
+          .append(") { nodes { oid message committedDate author { name } } }\n");
+      variables.put("p" + i, files.get(i).path("path").asText());
+    }
+    String query = "query(" + params + ") { repository(owner: $owner, name: $name) { "
+        + "object(oid: $head) { ... on Commit {\n" + fields + "} } } }";
+
+    JsonNode commit = graphQL.query(query, variables).path("repository").path("object");
+    for (int i = 0; i < files.size(); i++) {
+      JsonNode file = files.get(i);
+      JsonNode lastCommit = commit.path("f" + i).path("nodes").path(0);
+      if (lastCommit.isMissingNode()) {
+        log.error("No commit found for: {}", file.path("name").asText());
+        continue;
+      }
+      MappingHistoryEntry entry = new MappingHistoryEntry();
+      entry.setFilename(file.path("name").asText());
+      entry.setPath(file.path("path").asText());
+      entry.setCommitSha(lastCommit.path("oid").asText());
+      entry.setBlobSha(file.path("oid").asText());
+      entry.setCommitMessage(lastCommit.path("message").asText());
+      entry.setAuthor(lastCommit.path("author").path("name").asText());
+      entry.setCommittedAt(LocalDateTime.ofInstant(
+          OffsetDateTime.parse(lastCommit.path("committedDate").asText()).toInstant(),
+          ZoneId.systemDefault()));
+      entry.setSize(file.path("object").path("byteSize").asLong());
+      into.add(entry);
+    }
+  }
+
+  private MappingHistory toHistory(MappingHistoryEntry entry) {
+    MappingHistory history = new MappingHistory();
+    history.setFilename(entry.getFilename());
+    history.setCommitMessage(entry.getCommitMessage());
+    history.setAuthor(entry.getAuthor());
+    history.setDate(entry.getCommittedAt());
+    history.setDownloadUrl("https://raw.githubusercontent.com/" + config.getFullRepoPath() + "/"
+        + config.getBranch() + "/" + entry.getPath());
+    history.setSha(entry.getCommitSha());
+    history.setSize(entry.getSize());
+    return history;
+  }
+}
@@ -0,0 +1,90 @@
+package com.brindys.ETLTools.support.github;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Mapping files fetched from GitHub, stored on disk under their git blob
+ * sha. A blob's content never changes, so a stored file is valid forever
+ * and is checked against its sha once, when it is written.
+ */
+@Component
+public class SnapshotBlobStore {
+
+  private final Path dir;
+
+  public SnapshotBlobStore(@Value("${github.blob-store.dir:github-blobs}") String dir) throws IOException {
+    this.dir = Files.createDirectories(Path.of(dir));
+  }
+
+  /**
+   * The stored file for the sha, or null if it has not been fetched
+   */
+  public Path get(String sha) {
+    Path file = path(sha);
+    return Files.exists(file) ? file : null;
+  }
+
+  /**
+   * Stores the stream's content under the sha it is expected to have.
+   * Fails, storing nothing, if the content hashes to something else.
+   */
+  public Path put(String sha, InputStream content) throws IOException {
+    Path file = path(sha);
+    Files.createDirectories(file.getParent());
+    Path tmp = Files.createTempFile(file.getParent(), sha, ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        content.transferTo(out);
+      }
+      String actual = blobSha(tmp);
+      if (!actual.equals(sha)) {
+        throw new IOException("Blob " + sha + " hashed to " + actual);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return file;
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  // Two-character fan-out, like .git/objects
+  private Path path(String sha) {
+    if (!sha.matches("[0-9a-f]{40}")) {
+      throw new IllegalArgumentException("Not a blob sha: " + sha);
+    }
+    return dir.resolve(sha.substring(0, 2)).resolve(sha.substring(2));
+  }
+
+  /**
+   * The sha git gives the file as a blob
+   */
+  static String blobSha(Path file) throws IOException {
+    MessageDigest sha1;
+    try {
+      sha1 = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    sha1.update(("blob " + Files.size(file) + "\0").getBytes(StandardCharsets.US_ASCII));
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[64 * 1024];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        sha1.update(buffer, 0, n);
+      }
+    }
+    return HexFormat.of().formatHex(sha1.digest());
+  }
+}
@@ -13,8 +13,12 @@ public class CommitResponse {
   private boolean success;
   private String commitSha;
   private String commitUrl;
+  // Mapping file written under mappings/, which the next push builds on
+  private String filename;
   private String message;
   private LocalDateTime timestamp;
+  // Queued push to poll at /api/github/commit/{jobId}
+  private Long jobId;
 
   // Convenience constructor for simple responses
   public CommitResponse(boolean success, String message) {
@@ -15,4 +15,7 @@ public class MappingHistory {
   private String author;
   private LocalDateTime date;
   private String downloadUrl;
+  private String sha;
+  // File size in bytes
+  private long size;
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.brindys.ETLTools.support.github.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mapping file stored as its changes against the previous one. The full
+ * mapping is the checkpoint with every file in chain applied in order, then
+ * this one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnapshotDelta {
+  // Full snapshot the chain starts from
+  private String checkpoint;
+  // Delta files between the checkpoint and this one, oldest first
+  private List<String> chain;
+  // Keys added or changed, with their new values
+  private Map<String, Object> set;
+  private List<String> removed;
+}
@@ -0,0 +1,421 @@
+package com.brindys.ETLTools.support.github.fake;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for the parts of GitHub this app calls: the repository
+ * lookup, reading and creating files through the contents API, raw blob
+ * reads, and the two GraphQL queries behind the mapping history. It sends
+ * ETags and rate limit headers like GitHub does, and can add latency and
+ * random 502s, so the whole GitHub path can be load-tested offline.
+ *
+ * Enabled with github.fake.enabled=true, which also points the GitHub
+ * clients at it.
+ */
+@Component
+@ConditionalOnProperty(name = "github.fake.enabled", havingValue = "true")
+@Slf4j
+public class FakeGitHubServer {
+
+  private static class Commit {
+    final String sha;
+    final String message;
+    final String path;
+    final Instant date;
+
+    Commit(String sha, String message, String path, Instant date) {
+      this.sha = sha;
+      this.message = message;
+      this.path = path;
+      this.date = date;
+    }
+  }
+
+  private static final String AUTHOR = "Fake GitHub";
+
+  private final int port;
+  private final String owner;
+  private final String repo;
+  private final long latencyMillis;
+  private final double failureRate;
+  private final int rateLimit;
+  private final long rateLimitWindowMillis;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  // Path to content; one branch
+  private final Map<String, byte[]> files = new TreeMap<>();
+  private final Map<String, byte[]> blobs = new HashMap<>();
+  private final List<Commit> commits = new ArrayList<>();
+  private final AtomicInteger remaining = new AtomicInteger();
+  private final AtomicLong resetAt = new AtomicLong();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private HttpServer server;
+
+  public FakeGitHubServer(@Value("${github.fake.port:0}") int port,
+                          @Value("${github.repo.owner}") String owner,
+                          @Value("${github.repo.name}") String repo,
+                          @Value("${github.fake.latency-ms:0}") long latencyMillis,
+                          @Value("${github.fake.failure-rate:0}") double failureRate,
+                          @Value("${github.fake.rate-limit:5000}") int rateLimit,
+                          @Value("${github.fake.rate-limit-window-ms:3600000}") long rateLimitWindowMillis) {
+    this.port = port;
+    this.owner = owner;
+    this.repo = repo;
+    this.latencyMillis = latencyMillis;
+    this.failureRate = failureRate;
+    this.rateLimit = rateLimit;
+    this.rateLimitWindowMillis = rateLimitWindowMillis;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    remaining.set(rateLimit);
+    resetAt.set(System.currentTimeMillis() + rateLimitWindowMillis);
+    server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    server.createContext("/", this::handle);
+    server.setExecutor(Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "fake-github");
+      thread.setDaemon(true);
+      return thread;
+    }));
+    server.start();
+    log.info("Fake GitHub serving {}/{} at {}", owner, repo, getUrl());
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+    }
+  }
+
+  public String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  // Requests answered, including 304s
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  public long getNotModifiedCount() {
+    return notModified.get();
+  }
+
+  // ========== ROUTING ==========
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try {
+      if (latencyMillis > 0) {
+        Thread.sleep(latencyMillis);
+      }
+      if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+        send(exchange, 502, Map.of("message", "Simulated failure"), null);
+        return;
+      }
+      if (!takeQuota()) {
+        send(exchange, 403, Map.of("message", "API rate limit exceeded"), null);
+        return;
+      }
+
+      String method = exchange.getRequestMethod();
+      String path = exchange.getRequestURI().getRawPath();
+      String repoPath = "/repos/" + owner + "/" + repo;
+      String contentsPath = repoPath + "/contents/";
+      String blobsPath = repoPath + "/git/blobs/";
+      if (method.equals("POST") && path.equals("/graphql")) {
+        graphQL(exchange);
+      } else if (method.equals("GET") && path.equals(repoPath)) {
+        send(exchange, 200, repository(), null);
+      } else if (method.equals("GET") && path.startsWith(blobsPath)) {
+        getBlob(exchange, path.substring(blobsPath.length()));
+      } else if (path.startsWith(contentsPath)) {
+        String file = URLDecoder.decode(path.substring(contentsPath.length()), StandardCharsets.UTF_8);
+        if (method.equals("GET")) {
+          getContent(exchange, file);
+        } else if (method.equals("PUT")) {
+          putContent(exchange, file);
+        } else {
+          send(exchange, 405, Map.of("message", "Method not allowed"), null);
+        }
+      } else {
+        send(exchange, 404, Map.of("message", "Not Found"), null);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      send(exchange, 500, Map.of("message", "Interrupted"), null);
+    } catch (RuntimeException e) {
+      log.error("Fake GitHub failed on {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+      send(exchange, 500, Map.of("message", String.valueOf(e.getMessage())), null);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Counts a request against the quota, refilling it once the window ends
+   */
+  private boolean takeQuota() {
+    long now = System.currentTimeMillis();
+    long reset = resetAt.get();
+    if (now >= reset && resetAt.compareAndSet(reset, now + rateLimitWindowMillis)) {
+      remaining.set(rateLimit);
+    }
+    return remaining.getAndUpdate(left -> Math.max(0, left - 1)) > 0;
+  }
+
+  // ========== REST ==========
+
+  private Map<String, Object> repository() {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("id", 1);
+    body.put("name", repo);
+    body.put("full_name", owner + "/" + repo);
+    body.put("owner", Map.of("login", owner));
+    body.put("default_branch", "main");
+    body.put("url", getUrl() + "/repos/" + owner + "/" + repo);
+    body.put("html_url", getUrl() + "/" + owner + "/" + repo);
+    return body;
+  }
+
+  private void getContent(HttpExchange exchange, String path) throws IOException {
+    byte[] content;
+    synchronized (this) {
+      content = files.get(path);
+    }
+    if (content == null) {
+      send(exchange, 404, Map.of("message", "Not Found"), null);
+      return;
+    }
+    String etag = "\"" + blobSha(content) + "\"";
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      // GitHub does not charge for a 304
+      remaining.incrementAndGet();
+      notModified.incrementAndGet();
+      send(exchange, 304, null, etag);
+      return;
+    }
+    Map<String, Object> body = file(path, content);
+    body.put("encoding", "base64");
+    body.put("content", Base64.getEncoder().encodeToString(content));
+    send(exchange, 200, body, etag);
+  }
+
+  /**
+   * Raw blob content, as asked for by GHRepository.readBlob
+   */
+  private void getBlob(HttpExchange exchange, String sha) throws IOException {
+    byte[] content;
+    synchronized (this) {
+      content = blobs.get(sha);
+    }
+    if (content == null) {
+      send(exchange, 404, Map.of("message", "Not Found"), null);
+      return;
+    }
+    setRateLimitHeaders(exchange);
+    exchange.getResponseHeaders().set("Content-Type", "application/vnd.github.raw");
+    exchange.sendResponseHeaders(200, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+
+  private void putContent(HttpExchange exchange, String path) throws IOException {
+    JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+    byte[] content = Base64.getMimeDecoder().decode(request.path("content").asText());
+    String message = request.path("message").asText();
+
+    Commit commit;
+    synchronized (this) {
+      byte[] existing = files.get(path);
+      if (existing != null && !blobSha(existing).equals(request.path("sha").asText(null))) {
+        send(exchange, 422, Map.of("message", "Invalid request.\n\n\"sha\" wasn't supplied."), null);
+        return;
+      }
+      files.put(path, content);
+      blobs.put(blobSha(content), content);
+      commit = new Commit(commitSha(path, content), message, path, Instant.now());
+      commits.add(commit);
+    }
+
+    Map<String, Object> author = Map.of(
+        "name", AUTHOR,
+        "email", "fake-github@localhost",
+        "date", commit.date.toString());
+    Map<String, Object> commitBody = new LinkedHashMap<>();
+    commitBody.put("sha", commit.sha);
+    commitBody.put("message", message);
+    commitBody.put("author", author);
+    commitBody.put("committer", author);
+    commitBody.put("html_url", getUrl() + "/" + owner + "/" + repo + "/commit/" + commit.sha);
+
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("content", file(path, content));
+    body.put("commit", commitBody);
+    send(exchange, 201, body, null);
+  }
+
+  private Map<String, Object> file(String path, byte[] content) {
+    String base = getUrl() + "/repos/" + owner + "/" + repo;
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("type", "file");
+    body.put("name", path.substring(path.lastIndexOf('/') + 1));
+    body.put("path", path);
+    body.put("sha", blobSha(content));
+    body.put("size", content.length);
+    body.put("url", base + "/contents/" + path);
+    body.put("html_url", getUrl() + "/" + owner + "/" + repo + "/blob/main/" + path);
+    body.put("download_url", getUrl() + "/raw/" + path);
+    return body;
+  }
+
+  // ========== GRAPHQL ==========
+
+  /**
+   * Answers the head-and-tree and the per-file history queries of
+   * MappingHistoryIndex, told apart by the fields they ask for
+   */
+  private void graphQL(HttpExchange exchange) throws IOException {
+    JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+    String query = request.path("query").asText();
+    JsonNode variables = request.path("variables");
+
+    Map<String, Object> repository = new LinkedHashMap<>();
+    synchronized (this) {
+      if (query.contains("entries")) {
+        String dir = variables.path("dir").asText();
+        String prefix = dir.substring(dir.indexOf(':') + 1) + "/";
+        List<Map<String, Object>> entries = new ArrayList<>();
+        files.forEach((path, content) -> {
+          if (path.startsWith(prefix) && path.indexOf('/', prefix.length()) < 0) {
+            entries.add(Map.of(
+                "name", path.substring(prefix.length()),
+                "path", path,
+                "oid", blobSha(content),
+                "object", Map.of("byteSize", content.length)));
+          }
+        });
+        repository.put("ref", Map.of("target", Map.of("oid", head())));
+        repository.put("object", entries.isEmpty() ? null : Map.of("entries", entries));
+      } else if (query.contains("history(")) {
+        Map<String, Object> object = new LinkedHashMap<>();
+        Iterator<String> names = variables.fieldNames();
+        while (names.hasNext()) {
+          String name = names.next();
+          if (name.matches("p\\d+")) {
+            object.put("f" + name.substring(1), Map.of("nodes", lastCommit(variables.path(name).asText())));
+          }
+        }
+        repository.put("object", object);
+      } else {
+        send(exchange, 200, Map.of("errors", List.of(Map.of("message", "Query not supported by fake GitHub"))), null);
+        return;
+      }
+    }
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("repository", repository);
+    send(exchange, 200, Map.of("data", data), null);
+  }
+
+  // Caller holds this
+  private String head() {
+    return commits.isEmpty() ? "0".repeat(40) : commits.get(commits.size() - 1).sha;
+  }
+
+  // Caller holds this
+  private List<Map<String, Object>> lastCommit(String path) {
+    for (int i = commits.size() - 1; i >= 0; i--) {
+      Commit commit = commits.get(i);
+      if (commit.path.equals(path)) {
+        return List.of(Map.of(
+            "oid", commit.sha,
+            "message", commit.message,
+            "committedDate", commit.date.toString(),
+            "author", Map.of("name", AUTHOR)));
+      }
+    }
+    return List.of();
+  }
+
+  // ========== HELPERS ==========
+
+  private void setRateLimitHeaders(HttpExchange exchange) {
+    exchange.getResponseHeaders().set("X-RateLimit-Limit", Integer.toString(rateLimit));
+    exchange.getResponseHeaders().set("X-RateLimit-Remaining", Integer.toString(remaining.get()));
+    exchange.getResponseHeaders().set("X-RateLimit-Reset", Long.toString(resetAt.get() / 1000));
+  }
+
+  private void send(HttpExchange exchange, int status, Object body, String etag) throws IOException {
+    setRateLimitHeaders(exchange);
+    if (etag != null) {
+      exchange.getResponseHeaders().set("ETag", etag);
+    }
+    if (body == null) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    byte[] bytes = objectMapper.writeValueAsBytes(body);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Same hash git gives the file's blob
+   */
+  private static String blobSha(byte[] content) {
+    MessageDigest sha1 = sha1();
+    sha1.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+    return HexFormat.of().formatHex(sha1.digest(content));
+  }
+
+  private String commitSha(String path, byte[] content) {
+    MessageDigest sha1 = sha1();
+    sha1.update((commits.size() + ":" + path + ":" + System.nanoTime()).getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(sha1.digest(content));
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.brindys.ETLTools.support.github.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One mapping snapshot file on GitHub and the last commit that touched it
+ */
+@Entity
+@Table(name = "github_mapping_history")
+@Data
+public class MappingHistoryEntry {
+
+  @Id
+  @Column(name = "filename")
+  private String filename;
+
+  @Column(name = "path")
+  private String path;
+
+  @Column(name = "commit_sha")
+  private String commitSha;
+
+  // Git blob sha of the file's content; keys the local blob store
+  @Column(name = "blob_sha")
+  private String blobSha;
+
+  @Column(name = "commit_message", length = 4000)
+  private String commitMessage;
+
+  @Column(name = "author")
+  private String author;
+
+  @Column(name = "committed_at")
+  private LocalDateTime committedAt;
+
+  // File size in bytes
+  @Column(name = "size")
+  private long size;
+}
@@ -0,0 +1,12 @@
+package com.brindys.ETLTools.support.github.repository;
+
+import com.brindys.ETLTools.support.github.model.MappingHistoryEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MappingHistoryEntryRepository extends JpaRepository<MappingHistoryEntry, String> {
+  List<MappingHistoryEntry> findAllByOrderByCommittedAtDesc();
+}
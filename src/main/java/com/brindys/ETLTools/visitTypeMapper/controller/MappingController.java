@@ -1,50 +1,140 @@
 package com.brindys.ETLTools.visitTypeMapper.controller;
 
+import com.brindys.ETLTools.visitTypeMapper.dto.ImportSummary;
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingEntry;
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingPage;
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingSuggestion;
+import com.brindys.ETLTools.visitTypeMapper.dto.SuggestionResult;
 import com.brindys.ETLTools.visitTypeMapper.model.HierarchyMapping;
+import com.brindys.ETLTools.visitTypeMapper.model.MappingVersion;
 import com.brindys.ETLTools.visitTypeMapper.model.VocabMapping;
 import com.brindys.ETLTools.visitTypeMapper.repository.HierarchyMappingRepository;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingBatchRepository;
 import com.brindys.ETLTools.visitTypeMapper.repository.VocabMappingRepository;
+import com.brindys.ETLTools.visitTypeMapper.service.HierarchyClosure;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingCache;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingDiffService;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingImportService;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingReplicationQueue;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingResolveService;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingVersionStore;
+import com.brindys.ETLTools.visitTypeMapper.snapshot.MappingSnapshotWriter;
 
 import com.brindys.ETLTools.support.github.GitHubService;
 import com.brindys.ETLTools.support.github.dto.CommitRequest;
 import com.brindys.ETLTools.support.github.dto.CommitResponse;
 import com.brindys.ETLTools.support.github.dto.MappingHistory;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
 import java.io.IOException;  // ADD THIS
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
 public class MappingController {
 
+  private static final int MAX_PAGE_SIZE = 5000;
+  private static final int MAX_SUGGESTIONS = 50;
+
   @Autowired
   private VocabMappingRepository vocabRepo;
 
   @Autowired
   private HierarchyMappingRepository hierarchyRepo;
 
+  @Autowired
+  private MappingBatchRepository batchRepo;
+
+  @Autowired
+  private MappingImportService importService;
+
+  @Autowired
+  private MappingCache mappingCache;
+
+  @Autowired
+  private MappingResolveService resolveService;
+
+  @Autowired
+  private MappingVersionStore versionStore;
+
+  @Autowired
+  private MappingReplicationQueue replicationQueue;
+
+  @Autowired
+  private MappingDiffService diffService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
   // ADD THIS NEW AUTOWIRED FIELD:
   @Autowired
   private GitHubService gitHubService;
 
   // ========== VOCAB MAPPINGS ==========
 
+  /**
+   * All vocab mappings, tagged with the revision of the last vocab write.
+   * With "since", only the changes after that revision.
+   */
   @GetMapping("/vocab/all")
-  public ResponseEntity<Map<String, String>> getAllVocabMappings() {
-    List<VocabMapping> mappings = vocabRepo.findAll();
-    Map<String, String> result = new HashMap<>();
-    for (VocabMapping m : mappings) {
-      result.put(m.getSourceVisitType(), m.getTargetVisitType());
+  public ResponseEntity<?> getAllVocabMappings(@RequestParam(required = false) Long since) {
+    MappingCache.Snapshot snapshot = mappingCache.snapshot();
+    if (since != null) {
+      return ResponseEntity.ok(mappingCache.changesSince(snapshot, since, false));
     }
-    return ResponseEntity.ok(result);
+    return withRevision(snapshot.getVocabRevision(), snapshot.getVocab());
+  }
+
+  /**
+   * Keyset-paginated vocab mappings in source order. Pass nextCursor back as
+   * "after" to get the following page.
+   */
+  @GetMapping("/vocab/page")
+  @Transactional(readOnly = true)
+  public ResponseEntity<MappingPage> getVocabPage(@RequestParam(required = false) String after,
+                                                  @RequestParam(required = false) String prefix,
+                                                  @RequestParam(required = false) String q,
+                                                  @RequestParam(defaultValue = "500") int limit) {
+    int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    return ResponseEntity.ok(page(batchRepo.findVocabPage(after, prefix, q, size + 1), size));
+  }
+
+  /**
+   * All vocab mappings (optionally filtered) as NDJSON, in no particular order
+   */
+  @GetMapping("/vocab/stream")
+  public ResponseEntity<StreamingResponseBody> streamVocabMappings(@RequestParam(required = false) String prefix,
+                                                                   @RequestParam(required = false) String q) {
+    return streamMappings(mappingCache.vocab(), prefix, q);
   }
 
   @PostMapping("/vocab/save")
@@ -57,11 +147,13 @@ public class MappingController {
       return ResponseEntity.badRequest().body("Source visit type required");
     }
 
+    mappingCache.lockForWrite();
     VocabMapping mapping = vocabRepo.findBySourceVisitType(source)
         .orElse(new VocabMapping());
     mapping.setSourceVisitType(source);
     mapping.setTargetVisitType(target != null ? target : "");
     vocabRepo.save(mapping);
+    mappingCache.putVocab(mapping.getSourceVisitType(), mapping.getTargetVisitType());
 
     return ResponseEntity.ok("Saved");
   }
@@ -69,33 +161,137 @@ public class MappingController {
   @PostMapping("/vocab/bulk-save")
   @Transactional
   public ResponseEntity<String> bulkSaveVocabMappings(@RequestBody Map<String, String> mappings) {
-    for (Map.Entry<String, String> entry : mappings.entrySet()) {
-      VocabMapping mapping = vocabRepo.findBySourceVisitType(entry.getKey())
-          .orElse(new VocabMapping());
-      mapping.setSourceVisitType(entry.getKey());
-      mapping.setTargetVisitType(entry.getValue());
-      vocabRepo.save(mapping);
-    }
+    mappingCache.lockForWrite();
+    batchRepo.upsertVocabMappings(mappings.entrySet());
+    mappingCache.putAllVocab(mappings);
     return ResponseEntity.ok("Bulk saved " + mappings.size() + " mappings");
   }
 
+  /**
+   * Import a TSV/CSV file, sent as multipart "file" or as the raw body
+   */
+  @PostMapping(value = "/vocab/import", consumes = {
+      MediaType.MULTIPART_FORM_DATA_VALUE, "text/csv", "text/tab-separated-values", MediaType.TEXT_PLAIN_VALUE})
+  public ResponseEntity<StreamingResponseBody> importVocabMappings(
+      HttpServletRequest request,
+      @RequestParam(value = "file", required = false) MultipartFile file,
+      @RequestParam(defaultValue = "false") boolean header) throws IOException {
+    Reader reader = uploadReader(request, file);
+    return importResponse(listener -> importService.importVocabMappings(reader, header, listener));
+  }
+
+  /**
+   * Resolve a batch of source visit types to target and hierarchy parent.
+   * Takes a JSON array, NDJSON or CSV/TSV (first column) and answers in the
+   * same format, streaming both ways.
+   */
+  @PostMapping(value = "/vocab/resolve", consumes = {
+      MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+      "text/csv", "text/tab-separated-values", MediaType.TEXT_PLAIN_VALUE})
+  public ResponseEntity<StreamingResponseBody> resolveVocabMappings(
+      HttpServletRequest request,
+      @RequestParam(defaultValue = "false") boolean header) throws IOException {
+    MediaType contentType = MediaType.parseMediaType(request.getContentType());
+    Reader reader = uploadReader(request, null);
+
+    if (MediaType.APPLICATION_JSON.includes(contentType)) {
+      JsonParser parser;
+      try {
+        parser = resolveService.openJsonArray(reader);
+      } catch (IllegalArgumentException | IOException e) {
+        return ResponseEntity.badRequest()
+            .contentType(MediaType.TEXT_PLAIN)
+            .body(out -> out.write(e.getMessage().getBytes(StandardCharsets.UTF_8)));
+      }
+      return ResponseEntity.ok()
+          .contentType(MediaType.APPLICATION_JSON)
+          .body(out -> resolveService.resolveJsonArray(parser, out));
+    }
+
+    if (MediaType.APPLICATION_NDJSON.includes(contentType)) {
+      return ResponseEntity.ok()
+          .contentType(MediaType.APPLICATION_NDJSON)
+          .body(out -> resolveService.resolveNdjson(reader, out));
+    }
+
+    return ResponseEntity.ok()
+        .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+        .body(out -> {
+          Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+          resolveService.resolveCsv(reader, header, writer);
+        });
+  }
+
+  /**
+   * Up to k likely targets for each source visit type in a JSON array, from
+   * trigram similarity to existing mappings. Sources that are already
+   * mapped come back with their current target instead.
+   */
+  @PostMapping("/vocab/suggest")
+  public ResponseEntity<List<SuggestionResult>> suggestVocabTargets(@RequestBody List<String> sources,
+                                                                    @RequestParam(defaultValue = "5") int k,
+                                                                    @RequestParam(defaultValue = "0.3") double minScore) {
+    Map<String, String> vocab = mappingCache.vocab();
+    int limit = Math.max(1, Math.min(k, MAX_SUGGESTIONS));
+
+    // Each distinct unmapped source is looked up once
+    Map<String, List<MappingSuggestion>> suggestions = new LinkedHashMap<>();
+    for (String source : sources) {
+      String target = source == null ? null : vocab.get(source);
+      if (source != null && (target == null || target.isBlank())) {
+        suggestions.put(source, null);
+      }
+    }
+    List<String> unmapped = new ArrayList<>(suggestions.keySet());
+    List<List<MappingSuggestion>> found = mappingCache.suggestionIndex().suggestAll(unmapped, limit, minScore);
+    for (int i = 0; i < unmapped.size(); i++) {
+      suggestions.put(unmapped.get(i), found.get(i));
+    }
+
+    List<SuggestionResult> results = new ArrayList<>(sources.size());
+    for (String source : sources) {
+      List<MappingSuggestion> forSource = suggestions.get(source);
+      results.add(forSource != null
+          ? new SuggestionResult(source, null, forSource)
+          : new SuggestionResult(source, source == null ? null : vocab.get(source), List.of()));
+    }
+    return ResponseEntity.ok(results);
+  }
+
   @DeleteMapping("/vocab/delete/{source}")
   @Transactional
   public ResponseEntity<String> deleteVocabMapping(@PathVariable String source) {
+    mappingCache.lockForWrite();
     vocabRepo.deleteBySourceVisitType(source);
+    mappingCache.removeVocab(source);
     return ResponseEntity.ok("Deleted");
   }
 
   // ========== HIERARCHY MAPPINGS ==========
 
   @GetMapping("/hierarchy/all")
-  public ResponseEntity<Map<String, String>> getAllHierarchyMappings() {
-    List<HierarchyMapping> mappings = hierarchyRepo.findAll();
-    Map<String, String> result = new HashMap<>();
-    for (HierarchyMapping m : mappings) {
-      result.put(m.getSourceVisitType(), m.getParentHierarchyType());
+  public ResponseEntity<?> getAllHierarchyMappings(@RequestParam(required = false) Long since) {
+    MappingCache.Snapshot snapshot = mappingCache.snapshot();
+    if (since != null) {
+      return ResponseEntity.ok(mappingCache.changesSince(snapshot, since, true));
     }
-    return ResponseEntity.ok(result);
+    return withRevision(snapshot.getHierarchyRevision(), snapshot.getHierarchy());
+  }
+
+  @GetMapping("/hierarchy/page")
+  @Transactional(readOnly = true)
+  public ResponseEntity<MappingPage> getHierarchyPage(@RequestParam(required = false) String after,
+                                                      @RequestParam(required = false) String prefix,
+                                                      @RequestParam(required = false) String q,
+                                                      @RequestParam(defaultValue = "500") int limit) {
+    int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    return ResponseEntity.ok(page(batchRepo.findHierarchyPage(after, prefix, q, size + 1), size));
+  }
+
+  @GetMapping("/hierarchy/stream")
+  public ResponseEntity<StreamingResponseBody> streamHierarchyMappings(@RequestParam(required = false) String prefix,
+                                                                       @RequestParam(required = false) String q) {
+    return streamMappings(mappingCache.hierarchy(), prefix, q);
   }
 
   @PostMapping("/hierarchy/save")
@@ -108,11 +304,20 @@ public class MappingController {
       return ResponseEntity.badRequest().body("Source visit type required");
     }
 
+    // Held until the save is published, so no other write can slip in
+    // between the cycle check and this one
+    mappingCache.lockForWrite();
+    List<String> cycle = mappingCache.hierarchyClosure().findCycle(source, target, Map.of());
+    if (cycle != null) {
+      return ResponseEntity.badRequest().body("Would create a hierarchy cycle: " + String.join(" -> ", cycle));
+    }
+
     HierarchyMapping mapping = hierarchyRepo.findBySourceVisitType(source)
         .orElse(new HierarchyMapping());
     mapping.setSourceVisitType(source);
     mapping.setParentHierarchyType(target != null ? target : "");
     hierarchyRepo.save(mapping);
+    mappingCache.putHierarchy(mapping.getSourceVisitType(), mapping.getParentHierarchyType());
 
     return ResponseEntity.ok("Saved");
   }
@@ -120,32 +325,354 @@ public class MappingController {
   @PostMapping("/hierarchy/bulk-save")
   @Transactional
   public ResponseEntity<String> bulkSaveHierarchyMappings(@RequestBody Map<String, String> mappings) {
-    for (Map.Entry<String, String> entry : mappings.entrySet()) {
-      HierarchyMapping mapping = hierarchyRepo.findBySourceVisitType(entry.getKey())
-          .orElse(new HierarchyMapping());
-      mapping.setSourceVisitType(entry.getKey());
-      mapping.setParentHierarchyType(entry.getValue());
-      hierarchyRepo.save(mapping);
+    mappingCache.lockForWrite();
+    List<String> cycle = mappingCache.hierarchyClosure().findCycle(mappings);
+    if (cycle != null) {
+      return ResponseEntity.badRequest().body("Would create a hierarchy cycle: " + String.join(" -> ", cycle));
     }
+
+    batchRepo.upsertHierarchyMappings(mappings.entrySet());
+    mappingCache.putAllHierarchy(mappings);
     return ResponseEntity.ok("Bulk saved " + mappings.size() + " mappings");
   }
 
+  /**
+   * Import a TSV/CSV file, sent as multipart "file" or as the raw body
+   */
+  @PostMapping(value = "/hierarchy/import", consumes = {
+      MediaType.MULTIPART_FORM_DATA_VALUE, "text/csv", "text/tab-separated-values", MediaType.TEXT_PLAIN_VALUE})
+  public ResponseEntity<StreamingResponseBody> importHierarchyMappings(
+      HttpServletRequest request,
+      @RequestParam(value = "file", required = false) MultipartFile file,
+      @RequestParam(defaultValue = "false") boolean header) throws IOException {
+    Reader reader = uploadReader(request, file);
+    return importResponse(listener -> importService.importHierarchyMappings(reader, header, listener));
+  }
+
   @DeleteMapping("/hierarchy/delete/{source}")
   @Transactional
   public ResponseEntity<String> deleteHierarchyMapping(@PathVariable String source) {
+    mappingCache.lockForWrite();
     hierarchyRepo.deleteBySourceVisitType(source);
+    mappingCache.removeHierarchy(source);
     return ResponseEntity.ok("Deleted");
   }
 
+  // ========== PAGING AND STREAMING ==========
+
+  /**
+   * rows holds up to size + 1 entries; the extra one only tells us there is
+   * another page
+   */
+  private MappingPage page(List<MappingEntry> rows, int size) {
+    if (rows.size() <= size) {
+      return new MappingPage(rows, null);
+    }
+    List<MappingEntry> items = rows.subList(0, size);
+    return new MappingPage(items, items.get(size - 1).getSource());
+  }
+
+  /**
+   * Writes one snapshot map as NDJSON. The snapshot is immutable, so the
+   * stream is consistent however slowly the client reads it.
+   */
+  private ResponseEntity<StreamingResponseBody> streamMappings(Map<String, String> mappings, String prefix, String q) {
+    String needle = q == null || q.isEmpty() ? null : q.toLowerCase(Locale.ROOT);
+    StreamingResponseBody body = out -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        for (Map.Entry<String, String> e : mappings.entrySet()) {
+          String source = e.getKey();
+          String target = e.getValue();
+          if (prefix != null && !source.startsWith(prefix)) {
+            continue;
+          }
+          if (needle != null && !source.toLowerCase(Locale.ROOT).contains(needle)
+              && (target == null || !target.toLowerCase(Locale.ROOT).contains(needle))) {
+            continue;
+          }
+          generator.writeStartObject();
+          generator.writeStringField("source", source);
+          generator.writeStringField("target", target);
+          generator.writeEndObject();
+          generator.writeRaw('\n');
+        }
+      }
+    };
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(body);
+  }
+
+  // ========== IMPORTS ==========
+
+  private interface ImportTask {
+    ImportSummary run(MappingImportService.ImportListener listener) throws IOException;
+  }
+
+  private Reader uploadReader(HttpServletRequest request, MultipartFile file) throws IOException {
+    InputStream in = file != null ? file.getInputStream() : request.getInputStream();
+    return new InputStreamReader(in, request.getCharacterEncoding() != null
+        ? request.getCharacterEncoding()
+        : StandardCharsets.UTF_8.name());
+  }
+
+  /**
+   * Runs an import while streaming its progress back as NDJSON - one line per
+   * committed batch and per rejected row, then a final summary line
+   */
+  private ResponseEntity<StreamingResponseBody> importResponse(ImportTask task) {
+    StreamingResponseBody body = out -> {
+      MappingImportService.ImportListener listener = new MappingImportService.ImportListener() {
+        @Override
+        public void onProgress(long imported) throws IOException {
+          writeEvent(out, event("progress", "imported", imported));
+        }
+
+        @Override
+        public void onRejected(int line, String reason) throws IOException {
+          Map<String, Object> event = event("error", "line", line);
+          event.put("message", reason);
+          writeEvent(out, event);
+        }
+      };
+
+      try {
+        ImportSummary summary = task.run(listener);
+        Map<String, Object> event = event("done", "imported", summary.getImported());
+        event.put("rejected", summary.getRejected());
+        writeEvent(out, event);
+      } catch (Exception e) {
+        // Batches already committed stay imported
+        writeEvent(out, event("failed", "message", "Import failed: " + e.getMessage()));
+      }
+    };
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(body);
+  }
+
+  private Map<String, Object> event(String type, String key, Object value) {
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("type", type);
+    event.put(key, value);
+    return event;
+  }
+
+  private void writeEvent(OutputStream out, Map<String, Object> event) throws IOException {
+    out.write(objectMapper.writeValueAsBytes(event));
+    out.write('\n');
+    out.flush();
+  }
+
+  // ========== HIERARCHY CLOSURE ==========
+
+  /**
+   * Parent, grandparent and so on up to the root
+   */
+  @GetMapping("/hierarchy/ancestors/{source}")
+  public ResponseEntity<List<String>> getHierarchyAncestors(@PathVariable String source) {
+    return ResponseEntity.ok(mappingCache.hierarchyClosure().ancestors(source));
+  }
+
+  /**
+   * Every type below this one, parents before their children
+   */
+  @GetMapping("/hierarchy/descendants/{source}")
+  public ResponseEntity<List<String>> getHierarchyDescendants(@PathVariable String source) {
+    return ResponseEntity.ok(mappingCache.hierarchyClosure().descendants(source));
+  }
+
+  @GetMapping("/hierarchy/depth/{source}")
+  public ResponseEntity<Map<String, Object>> getHierarchyDepth(@PathVariable String source) {
+    HierarchyClosure closure = mappingCache.hierarchyClosure();
+    return ResponseEntity.ok(Map.of(
+        "source", source,
+        "depth", closure.depth(source),
+        "known", closure.contains(source)
+    ));
+  }
+
+  // ========== SNAPSHOT EXPORT ==========
+
+  /**
+   * Both tables in the binary format MappingSnapshotReader memory-maps, for
+   * ETL workers. Tagged with the revision like the JSON reads, so a worker
+   * holding the current file gets a 304.
+   */
+  @GetMapping("/mappings/snapshot")
+  public ResponseEntity<StreamingResponseBody> exportSnapshot(WebRequest webRequest) {
+    MappingCache.Snapshot snapshot = mappingCache.snapshot();
+    // Streamed bodies skip Spring's ETag check, so do it here; this also
+    // sets the ETag header
+    if (webRequest.checkNotModified(Long.toString(snapshot.getRevision()))) {
+      return null;
+    }
+    StreamingResponseBody body = out -> MappingSnapshotWriter.write(
+        snapshot.getRevision(), snapshot.getVocab(), snapshot.getHierarchy(), out);
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.noCache())
+        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"visit-type-mappings.snapshot\"")
+        .body(body);
+  }
+
+  /**
+   * Saves the flattened mapping as the next local version and queues its
+   * GitHub push. Answers 202 straight away; the push status can be polled
+   * with the returned job id.
+   */
   @PostMapping("/github/commit")
   public ResponseEntity<CommitResponse> commitToGitHub(@RequestBody CommitRequest request) {
-    CommitResponse response = gitHubService.commitMapping(request);
+    if (request.getMapping() == null) {
+      return ResponseEntity.badRequest().body(new CommitResponse(false, "No mapping to commit"));
+    }
+    Map<String, String> mapping = new HashMap<>();
+    request.getMapping().forEach((key, value) -> {
+      if (value != null) {
+        mapping.put(key, String.valueOf(value));
+      }
+    });
+    MappingVersion version = versionStore.commit(mapping, request.getMessage(), request.getAuthor());
+
+    String message = "Saved as mapping version " + version.getId();
+    if (version.getGithubStatus() == MappingVersion.Replication.PENDING) {
+      message += "; queued for GitHub";
+    }
+    CommitResponse response = new CommitResponse(true, message);
+    response.setJobId(version.getId());
+    return ResponseEntity.accepted().body(response);
+  }
 
-    if (response.isSuccess()) {
-      return ResponseEntity.ok(response);
-    } else {
-      return ResponseEntity.status(500).body(response);
+  /**
+   * Push status of a queued commit: the mapping version with its
+   * githubStatus, attempts, last error and, once pushed, commit SHA
+   */
+  @GetMapping("/github/commit/{jobId}")
+  public ResponseEntity<?> getCommitStatus(@PathVariable long jobId) {
+    MappingVersion version = replicationQueue.status(jobId);
+    if (version == null) {
+      return ResponseEntity.status(404).body(Map.of(
+          "success", false,
+          "error", "No commit job " + jobId
+      ));
+    }
+    return ResponseEntity.ok(version);
+  }
+
+  // ========== LOCAL VERSION HISTORY ==========
+
+  /**
+   * Every committed version, newest first, without its keys
+   */
+  @GetMapping("/mappings/versions")
+  public ResponseEntity<List<MappingVersion>> getMappingVersions() {
+    return ResponseEntity.ok(versionStore.history());
+  }
+
+  /**
+   * The flattened mapping as of a version, in the same shape as
+   * /github/restore
+   */
+  @GetMapping("/mappings/versions/{version}")
+  public ResponseEntity<?> getMappingVersion(@PathVariable long version) {
+    Map<String, String> mapping = versionStore.load(version);
+    if (mapping == null) {
+      return ResponseEntity.status(404).body(Map.of(
+          "success", false,
+          "error", "No mapping version " + version
+      ));
+    }
+    return ResponseEntity.ok(Map.of(
+        "success", true,
+        "mapping", new TreeMap<>(mapping),
+        "message", "Mapping version " + version + " loaded"
+    ));
+  }
+
+  /**
+   * Every key that differs between two revisions, each a version number or
+   * "live" for the current tables. Streamed as NDJSON in key order - one
+   * added, removed or changed line per key, then a done line with the
+   * counts - so six-figure mappings diff in constant memory.
+   */
+  @GetMapping("/mappings/diff")
+  public ResponseEntity<?> diffMappings(@RequestParam String from, @RequestParam String to) {
+    try {
+      for (String revision : List.of(from, to)) {
+        if (!diffService.exists(revision)) {
+          return ResponseEntity.status(404).body(Map.of(
+              "success", false,
+              "error", "No mapping version " + revision
+          ));
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of(
+          "success", false,
+          "error", e.getMessage()
+      ));
     }
+
+    StreamingResponseBody body = out -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        long[] counts = new long[3];
+        try {
+          diffService.diff(from, to, new MappingDiffService.DiffListener() {
+            @Override
+            public void added(String key, String after) throws IOException {
+              counts[0]++;
+              writeChange(generator, "added", key, null, after);
+            }
+
+            @Override
+            public void removed(String key, String before) throws IOException {
+              counts[1]++;
+              writeChange(generator, "removed", key, before, null);
+            }
+
+            @Override
+            public void changed(String key, String before, String after) throws IOException {
+              counts[2]++;
+              writeChange(generator, "changed", key, before, after);
+            }
+          });
+          generator.writeStartObject();
+          generator.writeStringField("type", "done");
+          generator.writeNumberField("added", counts[0]);
+          generator.writeNumberField("removed", counts[1]);
+          generator.writeNumberField("changed", counts[2]);
+          generator.writeEndObject();
+        } catch (Exception e) {
+          generator.writeStartObject();
+          generator.writeStringField("type", "failed");
+          generator.writeStringField("message", "Diff failed: " + e.getMessage());
+          generator.writeEndObject();
+        }
+        generator.writeRaw('\n');
+      }
+    };
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(body);
+  }
+
+  private static void writeChange(JsonGenerator generator, String type, String key, String before, String after)
+      throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("type", type);
+    generator.writeStringField("key", key);
+    if (before != null) {
+      generator.writeStringField("before", before);
+    }
+    if (after != null) {
+      generator.writeStringField("after", after);
+    }
+    generator.writeEndObject();
+    generator.writeRaw('\n');
   }
 
   /**
@@ -202,31 +729,42 @@ public class MappingController {
 
 
   /**
-   * Helper endpoint to get all current mappings as JSON for committing
+   * Helper endpoint to get all current mappings as JSON for committing. With
+   * "since", each table holds only its changes after that revision.
    */
   @GetMapping("/github/current-mappings")
-  public ResponseEntity<Map<String, Object>> getCurrentMappings() {
+  public ResponseEntity<Map<String, Object>> getCurrentMappings(@RequestParam(required = false) Long since) {
     Map<String, Object> result = new HashMap<>();
 
-    // Get vocab mappings
-    List<VocabMapping> vocabs = vocabRepo.findAll();
-    Map<String, String> vocabMap = new HashMap<>();
-    for (VocabMapping v : vocabs) {
-      vocabMap.put(v.getSourceVisitType(), v.getTargetVisitType());
+    // Both maps come from the same snapshot
+    MappingCache.Snapshot snapshot = mappingCache.snapshot();
+    result.put("revision", snapshot.getRevision());
+    if (since != null) {
+      result.put("vocab_mappings", mappingCache.changesSince(snapshot, since, false));
+      result.put("hierarchy_mappings", mappingCache.changesSince(snapshot, since, true));
+      return ResponseEntity.ok(result);
     }
 
-    // Get hierarchy mappings
-    List<HierarchyMapping> hierarchies = hierarchyRepo.findAll();
-    Map<String, String> hierarchyMap = new HashMap<>();
-    for (HierarchyMapping h : hierarchies) {
-      hierarchyMap.put(h.getSourceVisitType(), h.getParentHierarchyType());
-    }
+    Map<String, String> vocabMap = snapshot.getVocab();
+    Map<String, String> hierarchyMap = snapshot.getHierarchy();
 
     result.put("vocab_mappings", vocabMap);
     result.put("hierarchy_mappings", hierarchyMap);
     result.put("total_count", vocabMap.size() + hierarchyMap.size());
 
-    return ResponseEntity.ok(result);
+    return withRevision(snapshot.getRevision(), result);
+  }
+
+  /**
+   * Tags the response with the revision as its ETag. Spring answers a
+   * matching If-None-Match with 304 and no body; no-cache makes browsers
+   * revalidate every time instead of reusing a stale copy.
+   */
+  private <T> ResponseEntity<T> withRevision(long revision, T body) {
+    return ResponseEntity.ok()
+        .eTag(Long.toString(revision))
+        .cacheControl(CacheControl.noCache())
+        .body(body);
   }
 
 
@@ -0,0 +1,20 @@
+package com.brindys.ETLTools.visitTypeMapper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MappingDelta {
+  // Pass back as "since" to get the changes after this one
+  private long revision;
+  // True when changed holds the whole table and the client should replace its copy
+  private boolean full;
+  private Map<String, String> changed;
+  private List<String> removed;
+}
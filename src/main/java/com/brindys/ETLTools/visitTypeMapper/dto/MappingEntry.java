@@ -0,0 +1,13 @@
+package com.brindys.ETLTools.visitTypeMapper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MappingEntry {
+  private String source;
+  private String target;
+}
@@ -0,0 +1,16 @@
+package com.brindys.ETLTools.visitTypeMapper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MappingPage {
+  private List<MappingEntry> items;
+  // Pass back as "after" for the next page; null on the last page
+  private String nextCursor;
+}
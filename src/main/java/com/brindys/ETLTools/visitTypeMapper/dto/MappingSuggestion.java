@@ -0,0 +1,16 @@
+package com.brindys.ETLTools.visitTypeMapper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MappingSuggestion {
+  private String target;
+  // Existing source (or the target itself) the query looked most like
+  private String matched;
+  // Jaccard similarity of the trigrams, 0 to 1
+  private double score;
+}
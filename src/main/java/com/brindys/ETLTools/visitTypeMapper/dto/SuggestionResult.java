@@ -0,0 +1,17 @@
+package com.brindys.ETLTools.visitTypeMapper.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionResult {
+  private String source;
+  // Current target if the source is already mapped; it then has no suggestions
+  private String mapped;
+  private List<MappingSuggestion> suggestions;
+}
@@ -0,0 +1,22 @@
+package com.brindys.ETLTools.visitTypeMapper.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * The one-row counter behind the mapping cache's revision numbers. Mapped
+ * here so Hibernate creates the table; it is bumped through
+ * MappingBatchRepository in the same transaction as the write it numbers.
+ */
+@Entity
+@Table(name = "mapping_revision")
+@Data
+public class MappingRevision {
+
+  @Id
+  @Column(name = "id")
+  private Integer id;
+
+  @Column(name = "revision", nullable = false)
+  private Long revision;
+}
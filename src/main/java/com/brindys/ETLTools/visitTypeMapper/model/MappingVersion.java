@@ -0,0 +1,76 @@
+package com.brindys.ETLTools.visitTypeMapper.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One committed version of the flattened mapping. Its keys live in
+ * mapping_version_entries - all of them for a checkpoint, otherwise only
+ * those changed since the previous version.
+ */
+@Entity
+@Table(name = "mapping_versions")
+@Data
+public class MappingVersion {
+
+  public enum Replication {
+    // GitHub push switched off
+    OFF,
+    // Waiting in the queue, including between retries
+    PENDING,
+    PUSHED,
+    // Pushed as part of a later version's commit
+    COALESCED
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "message")
+  private String message;
+
+  @Column(name = "author")
+  private String author;
+
+  @Column(name = "created_at")
+  private LocalDateTime createdAt;
+
+  @Column(name = "checkpoint")
+  private boolean checkpoint;
+
+  // Keys in the whole mapping at this version
+  @Column(name = "entry_count")
+  private int entryCount;
+
+  // Keys added, changed or removed since the previous version
+  @Column(name = "change_count")
+  private int changeCount;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "github_status")
+  private Replication githubStatus;
+
+  @Column(name = "github_sha")
+  private String githubSha;
+
+  @Column(name = "github_url")
+  private String githubUrl;
+
+  // Mapping file the push wrote; the next push is a delta against it
+  @Column(name = "github_file")
+  private String githubFile;
+
+  // Boxed so the column can be added to an existing table; null means none
+  @Column(name = "github_attempts")
+  private Integer githubAttempts;
+
+  // Earliest time of the next push after a failed one
+  @Column(name = "github_next_attempt_at")
+  private LocalDateTime githubNextAttemptAt;
+
+  @Column(name = "github_error", length = 2000)
+  private String githubError;
+}
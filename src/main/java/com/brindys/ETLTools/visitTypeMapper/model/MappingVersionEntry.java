@@ -0,0 +1,41 @@
+package com.brindys.ETLTools.visitTypeMapper.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * A key's value as of one mapping version. Mapped here so Hibernate creates
+ * the table; rows are written and replayed in JDBC batches through
+ * MappingVersionEntryRepository.
+ */
+@Entity
+@Table(name = "mapping_version_entries",
+    indexes = @Index(name = "idx_mapping_version_entries_version", columnList = "version_id"))
+@IdClass(MappingVersionEntry.Key.class)
+@Data
+public class MappingVersionEntry {
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Key implements Serializable {
+    private Long versionId;
+    private String mappingKey;
+  }
+
+  @Id
+  @Column(name = "version_id")
+  private Long versionId;
+
+  @Id
+  @Column(name = "mapping_key")
+  private String mappingKey;
+
+  // Null when the version removed the key
+  @Column(name = "mapping_value")
+  private String mappingValue;
+}
@@ -0,0 +1,161 @@
+package com.brindys.ETLTools.visitTypeMapper.repository;
+
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * JDBC batch access to the mapping tables. Each written row is a single
+ * INSERT ... ON CONFLICT DO UPDATE, so bulk saves skip the per-row
+ * lookup and Hibernate dirty checking. Runs in the caller's transaction.
+ */
+@Repository
+public class MappingBatchRepository {
+
+  private static final String UPSERT_VOCAB_SQL =
+      "INSERT INTO vocab_mappings (source_visit_type, target_visit_type) VALUES (?, ?) "
+          + "ON CONFLICT(source_visit_type) DO UPDATE SET target_visit_type = excluded.target_visit_type";
+
+  private static final String UPSERT_HIERARCHY_SQL =
+      "INSERT INTO hierarchy_mappings (source_visit_type, parent_hierarchy_type) VALUES (?, ?) "
+          + "ON CONFLICT(source_visit_type) DO UPDATE SET parent_hierarchy_type = excluded.parent_hierarchy_type";
+
+  private static final String SELECT_VOCAB_SQL =
+      "SELECT source_visit_type, target_visit_type FROM vocab_mappings";
+
+  private static final String SELECT_HIERARCHY_SQL =
+      "SELECT source_visit_type, parent_hierarchy_type FROM hierarchy_mappings";
+
+  // Live tables as the flattened keys commits use, in key order. Rows with
+  // no target are left out, as they are from commits.
+  private static final String SELECT_FLATTENED_SQL =
+      "SELECT 'hierarchy:' || source_visit_type, parent_hierarchy_type FROM hierarchy_mappings "
+          + "WHERE parent_hierarchy_type IS NOT NULL "
+          + "UNION ALL SELECT 'vocab:' || source_visit_type, target_visit_type FROM vocab_mappings "
+          + "WHERE target_visit_type IS NOT NULL ORDER BY 1";
+
+  private static final String NEXT_REVISION_SQL =
+      "INSERT INTO mapping_revision (id, revision) VALUES (1, 1) "
+          + "ON CONFLICT(id) DO UPDATE SET revision = revision + 1 RETURNING revision";
+
+  private static final String SELECT_REVISION_SQL =
+      "SELECT revision FROM mapping_revision WHERE id = 1";
+
+  // Sorts after any string that starts with the prefix it is appended to
+  private static final String PREFIX_END = "char(1114111)";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${mapping.bulk.batch-size:1000}")
+  private int batchSize;
+
+  public int upsertVocabMappings(Collection<Map.Entry<String, String>> mappings) {
+    return upsert(UPSERT_VOCAB_SQL, mappings);
+  }
+
+  public int upsertHierarchyMappings(Collection<Map.Entry<String, String>> mappings) {
+    return upsert(UPSERT_HIERARCHY_SQL, mappings);
+  }
+
+  /**
+   * Streams every vocab row to the consumer without building entities
+   */
+  public void forEachVocabMapping(BiConsumer<String, String> consumer) {
+    forEach(SELECT_VOCAB_SQL, consumer);
+  }
+
+  public void forEachHierarchyMapping(BiConsumer<String, String> consumer) {
+    forEach(SELECT_HIERARCHY_SQL, consumer);
+  }
+
+  /**
+   * One page of vocab rows in source order, starting after the given source.
+   * prefix matches the start of the source (case-sensitive, uses the key
+   * index); query matches anywhere in source or target, ignoring ASCII case.
+   */
+  public List<MappingEntry> findVocabPage(String after, String prefix, String query, int limit) {
+    return findPage("vocab_mappings", "target_visit_type", after, prefix, query, limit);
+  }
+
+  public List<MappingEntry> findHierarchyPage(String after, String prefix, String query, int limit) {
+    return findPage("hierarchy_mappings", "parent_hierarchy_type", after, prefix, query, limit);
+  }
+
+  private List<MappingEntry> findPage(String table, String targetColumn, String after,
+                                      String prefix, String query, int limit) {
+    StringBuilder sql = new StringBuilder("SELECT source_visit_type, ").append(targetColumn)
+        .append(" FROM ").append(table).append(" WHERE 1 = 1");
+    List<Object> args = new ArrayList<>();
+    if (after != null && !after.isEmpty()) {
+      sql.append(" AND source_visit_type > ?");
+      args.add(after);
+    }
+    if (prefix != null && !prefix.isEmpty()) {
+      sql.append(" AND source_visit_type >= ? AND source_visit_type < ? || ").append(PREFIX_END);
+      args.add(prefix);
+      args.add(prefix);
+    }
+    if (query != null && !query.isEmpty()) {
+      String needle = query.toLowerCase(Locale.ROOT);
+      sql.append(" AND (instr(lower(source_visit_type), ?) > 0 OR instr(lower(")
+          .append(targetColumn).append("), ?) > 0)");
+      args.add(needle);
+      args.add(needle);
+    }
+    sql.append(" ORDER BY source_visit_type LIMIT ?");
+    args.add(limit);
+
+    return jdbcTemplate.query(sql.toString(),
+        (rs, row) -> new MappingEntry(rs.getString(1), rs.getString(2)), args.toArray());
+  }
+
+  /**
+   * Both live tables as "hierarchy:"/"vocab:" keys, read lazily in key
+   * order. The caller closes the stream.
+   */
+  public Stream<Map.Entry<String, String>> streamFlattened() {
+    return jdbcTemplate.queryForStream(SELECT_FLATTENED_SQL,
+        (rs, row) -> Map.entry(rs.getString(1), rs.getString(2)));
+  }
+
+  /**
+   * Bumps the revision counter and returns the new value. Commits or rolls
+   * back with the caller's transaction.
+   */
+  public long nextRevision() {
+    return jdbcTemplate.queryForObject(NEXT_REVISION_SQL, Long.class);
+  }
+
+  /**
+   * The counter's current value, 0 before the first write
+   */
+  public long currentRevision() {
+    List<Long> revision = jdbcTemplate.queryForList(SELECT_REVISION_SQL, Long.class);
+    return revision.isEmpty() ? 0 : revision.get(0);
+  }
+
+  private void forEach(String sql, BiConsumer<String, String> consumer) {
+    jdbcTemplate.query(sql, rs -> {
+      consumer.accept(rs.getString(1), rs.getString(2));
+    });
+  }
+
+  private int upsert(String sql, Collection<Map.Entry<String, String>> mappings) {
+    jdbcTemplate.batchUpdate(sql, mappings, batchSize, (ps, entry) -> {
+      ps.setString(1, entry.getKey());
+      ps.setString(2, entry.getValue());
+    });
+    return mappings.size();
+  }
+}
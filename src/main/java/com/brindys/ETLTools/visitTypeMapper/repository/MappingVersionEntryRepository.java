@@ -0,0 +1,108 @@
+package com.brindys.ETLTools.visitTypeMapper.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * JDBC batch access to mapping_version_entries. Runs in the caller's
+ * transaction.
+ */
+@Repository
+public class MappingVersionEntryRepository {
+
+  private static final String INSERT_SQL =
+      "INSERT INTO mapping_version_entries (version_id, mapping_key, mapping_value) VALUES (?, ?, ?)";
+
+  private static final String SELECT_RANGE_SQL =
+      "SELECT version_id, mapping_key, mapping_value FROM mapping_version_entries "
+          + "WHERE version_id BETWEEN ? AND ? ORDER BY version_id";
+
+  private static final String SELECT_NEWEST_SQL =
+      "SELECT mapping_key, mapping_value FROM mapping_version_entries "
+          + "WHERE version_id BETWEEN ? AND ? ORDER BY mapping_key, version_id DESC";
+
+  public interface EntryConsumer {
+    void accept(long version, String key, String value);
+  }
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${mapping.bulk.batch-size:1000}")
+  private int batchSize;
+
+  /**
+   * Stores the version's entries; a null value records a removed key
+   */
+  public void insertEntries(long version, Collection<Map.Entry<String, String>> entries) {
+    jdbcTemplate.batchUpdate(INSERT_SQL, entries, batchSize, (ps, entry) -> {
+      ps.setLong(1, version);
+      ps.setString(2, entry.getKey());
+      ps.setString(3, entry.getValue());
+    });
+  }
+
+  /**
+   * Streams the entries of versions from to to, inclusive, in version order
+   */
+  public void forEachEntry(long from, long to, EntryConsumer consumer) {
+    jdbcTemplate.query(SELECT_RANGE_SQL, rs -> {
+      consumer.accept(rs.getLong(1), rs.getString(2), rs.getString(3));
+    }, from, to);
+  }
+
+  /**
+   * The mapping as of version to, rebuilt from its checkpoint from, read
+   * lazily in key order. Only each key's newest row counts, and removed
+   * keys are left out, so nothing is held in memory. The caller closes the
+   * stream.
+   */
+  public Stream<Map.Entry<String, String>> streamVersion(long from, long to) {
+    Stream<String[]> rows = jdbcTemplate.queryForStream(SELECT_NEWEST_SQL,
+        (rs, row) -> new String[] {rs.getString(1), rs.getString(2)}, from, to);
+    Iterator<String[]> it = rows.iterator();
+    Iterator<Map.Entry<String, String>> newest = new Iterator<>() {
+      private String lastKey;
+      private Map.Entry<String, String> next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && it.hasNext()) {
+          String[] row = it.next();
+          if (row[0].equals(lastKey)) {
+            // An older row of a key already seen
+            continue;
+          }
+          lastKey = row[0];
+          if (row[1] != null) {
+            next = Map.entry(row[0], row[1]);
+          }
+        }
+        return next != null;
+      }
+
+      @Override
+      public Map.Entry<String, String> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Map.Entry<String, String> entry = next;
+        next = null;
+        return entry;
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(newest, Spliterator.ORDERED), false)
+        .onClose(rows::close);
+  }
+}
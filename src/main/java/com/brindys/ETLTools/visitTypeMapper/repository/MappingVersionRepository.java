@@ -0,0 +1,22 @@
+package com.brindys.ETLTools.visitTypeMapper.repository;
+
+import com.brindys.ETLTools.visitTypeMapper.model.MappingVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MappingVersionRepository extends JpaRepository<MappingVersion, Long> {
+  List<MappingVersion> findAllByOrderByIdDesc();
+  Optional<MappingVersion> findFirstByOrderByIdDesc();
+  // Checkpoint a version is replayed from
+  Optional<MappingVersion> findFirstByCheckpointTrueAndIdLessThanEqualOrderByIdDesc(Long id);
+  long countByIdGreaterThan(Long id);
+  // GitHub push queue, oldest first
+  List<MappingVersion> findByGithubStatusOrderByIdAsc(MappingVersion.Replication githubStatus);
+  // Last push a delta can build on
+  Optional<MappingVersion> findFirstByGithubStatusAndGithubFileNotNullOrderByIdDesc(
+      MappingVersion.Replication githubStatus);
+}
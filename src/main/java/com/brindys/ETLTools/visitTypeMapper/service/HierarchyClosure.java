@@ -0,0 +1,314 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ancestor/descendant index over the hierarchy mappings. Each type has at
+ * most one parent, so alongside the parent links this keeps the reverse
+ * child links and every type's depth. Ancestor and descendant queries then
+ * cost O(result) and depth is a lookup. Re-parenting a type only touches its
+ * own subtree, and edges that would close a cycle are refused.
+ */
+@Slf4j
+public class HierarchyClosure {
+
+  private final Map<String, String> parents = new HashMap<>();
+  private final Map<String, Set<String>> children = new HashMap<>();
+  private final Map<String, Integer> depths = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Index a whole hierarchy table. Any edge that would close a cycle in
+   * existing data is left out and logged.
+   */
+  public static HierarchyClosure build(Map<String, String> hierarchy) {
+    HierarchyClosure closure = new HierarchyClosure();
+    closure.rebuild(hierarchy);
+    return closure;
+  }
+
+  // ========== QUERIES ==========
+
+  /**
+   * Parent, grandparent and so on up to the root
+   */
+  public List<String> ancestors(String type) {
+    lock.readLock().lock();
+    try {
+      List<String> result = new ArrayList<>();
+      for (String parent = parents.get(type); parent != null; parent = parents.get(parent)) {
+        result.add(parent);
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Every type below this one, parents before their children
+   */
+  public List<String> descendants(String type) {
+    lock.readLock().lock();
+    try {
+      List<String> result = new ArrayList<>();
+      Deque<String> stack = new ArrayDeque<>();
+      pushChildren(stack, type);
+      while (!stack.isEmpty()) {
+        String node = stack.pop();
+        result.add(node);
+        pushChildren(stack, node);
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Number of parent links above the type; roots and unknown types are 0
+   */
+  public int depth(String type) {
+    lock.readLock().lock();
+    try {
+      return depths.getOrDefault(type, 0);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public boolean contains(String type) {
+    lock.readLock().lock();
+    try {
+      return parents.containsKey(type) || children.containsKey(type);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // ========== CYCLE CHECKS ==========
+
+  /**
+   * The cycle giving child this parent would close, as child -> ... -> child,
+   * or null if there is none. Edges in pending (not yet applied) take
+   * precedence over the indexed ones.
+   */
+  public List<String> findCycle(String child, String parent, Map<String, String> pending) {
+    if (isBlank(parent)) {
+      return null;
+    }
+    lock.readLock().lock();
+    try {
+      List<String> path = new ArrayList<>();
+      path.add(child);
+      int limit = parents.size() + pending.size() + 2;
+      for (String node = parent; node != null; node = parentOf(node, pending)) {
+        path.add(node);
+        // Running longer than the graph means pending already loops on its own
+        if (node.equals(child) || path.size() > limit) {
+          return path;
+        }
+      }
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * The first cycle that applying all of edges at once would close, or null.
+   * Linear in the edges plus the indexed ancestors they reach.
+   */
+  public List<String> findCycle(Map<String, String> edges) {
+    lock.readLock().lock();
+    try {
+      Set<String> acyclic = new HashSet<>();
+      for (String start : edges.keySet()) {
+        LinkedHashSet<String> path = new LinkedHashSet<>();
+        for (String node = start; node != null && !acyclic.contains(node); node = parentOf(node, edges)) {
+          if (!path.add(node)) {
+            return cycleFrom(path, node);
+          }
+        }
+        acyclic.addAll(path);
+      }
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // ========== UPDATES ==========
+
+  /**
+   * Give child a new parent (blank for none), moving its whole subtree.
+   * Refused, and logged, if it would close a cycle.
+   */
+  void setParent(String child, String parent) {
+    lock.writeLock().lock();
+    try {
+      link(child, parent);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Apply many parent changes. Large batches are cheaper to index from
+   * scratch than one subtree at a time.
+   */
+  void setParents(Map<String, String> edges) {
+    lock.writeLock().lock();
+    try {
+      if (edges.size() > Math.max(64, parents.size() / 4)) {
+        Map<String, String> merged = new LinkedHashMap<>(parents);
+        merged.putAll(edges);
+        rebuild(merged);
+        return;
+      }
+      for (Map.Entry<String, String> e : edges.entrySet()) {
+        link(e.getKey(), e.getValue());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Drop the type's parent link; it becomes the root of its own subtree
+   */
+  void remove(String child) {
+    setParent(child, null);
+  }
+
+  private void link(String child, String parent) {
+    if (!isBlank(parent) && findCycle(child, parent, Collections.emptyMap()) != null) {
+      log.warn("Ignoring hierarchy edge {} -> {}: it would close a cycle", child, parent);
+      return;
+    }
+
+    String old = parents.remove(child);
+    if (old != null) {
+      Set<String> siblings = children.get(old);
+      siblings.remove(child);
+      if (siblings.isEmpty()) {
+        children.remove(old);
+      }
+    }
+
+    int depth = 0;
+    if (!isBlank(parent)) {
+      parents.put(child, parent);
+      children.computeIfAbsent(parent, p -> new LinkedHashSet<>()).add(child);
+      depth = depths.getOrDefault(parent, 0) + 1;
+    }
+    shiftSubtree(child, depth - depths.getOrDefault(child, 0));
+  }
+
+  private void shiftSubtree(String root, int delta) {
+    if (delta == 0) {
+      return;
+    }
+    Deque<String> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      String node = stack.pop();
+      int depth = depths.getOrDefault(node, 0) + delta;
+      if (depth == 0) {
+        depths.remove(node);
+      } else {
+        depths.put(node, depth);
+      }
+      pushChildren(stack, node);
+    }
+  }
+
+  private void rebuild(Map<String, String> hierarchy) {
+    parents.clear();
+    children.clear();
+    depths.clear();
+
+    // Link every edge that does not close a cycle, then set depths top down
+    for (Map.Entry<String, String> e : hierarchy.entrySet()) {
+      String child = e.getKey();
+      String parent = e.getValue();
+      if (isBlank(parent)) {
+        continue;
+      }
+      if (findCycle(child, parent, Collections.emptyMap()) != null) {
+        log.warn("Ignoring hierarchy edge {} -> {}: it would close a cycle", child, parent);
+        continue;
+      }
+      parents.put(child, parent);
+      children.computeIfAbsent(parent, p -> new LinkedHashSet<>()).add(child);
+    }
+
+    Deque<String> stack = new ArrayDeque<>();
+    for (String node : children.keySet()) {
+      if (!parents.containsKey(node)) {
+        stack.push(node);
+      }
+    }
+    while (!stack.isEmpty()) {
+      String node = stack.pop();
+      Set<String> below = children.get(node);
+      if (below != null) {
+        int depth = depths.getOrDefault(node, 0) + 1;
+        for (String child : below) {
+          depths.put(child, depth);
+          stack.push(child);
+        }
+      }
+    }
+  }
+
+  private String parentOf(String node, Map<String, String> pending) {
+    if (pending.containsKey(node)) {
+      String parent = pending.get(node);
+      return isBlank(parent) ? null : parent;
+    }
+    return parents.get(node);
+  }
+
+  private void pushChildren(Deque<String> stack, String node) {
+    Set<String> below = children.get(node);
+    if (below != null) {
+      // Reversed so the stack pops them in insertion order
+      List<String> ordered = new ArrayList<>(below);
+      for (int i = ordered.size() - 1; i >= 0; i--) {
+        stack.push(ordered.get(i));
+      }
+    }
+  }
+
+  private static List<String> cycleFrom(LinkedHashSet<String> path, String repeated) {
+    List<String> cycle = new ArrayList<>();
+    boolean inCycle = false;
+    for (String node : path) {
+      inCycle |= node.equals(repeated);
+      if (inCycle) {
+        cycle.add(node);
+      }
+    }
+    cycle.add(repeated);
+    return cycle;
+  }
+
+  private static boolean isBlank(String type) {
+    return type == null || type.isBlank();
+  }
+}
@@ -0,0 +1,355 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingDelta;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingBatchRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Read-through cache of both mapping tables. Readers get an immutable
+ * snapshot from an AtomicReference and never touch the database or take a
+ * lock. Writers copy the affected map, change the copy and swap in a new
+ * snapshot once their transaction has committed. A writer takes the write
+ * lock with lockForWrite before it touches the tables and holds it through
+ * its commit until its snapshot is published, so snapshots follow commit
+ * order and checks made against the cache still hold when the write lands.
+ * The hierarchy closure index, and the suggestion index once something has
+ * asked for it, are kept up to date alongside the snapshot.
+ * <p>
+ * Every write gets the next revision number from a counter row bumped in
+ * the write's own transaction, so revisions keep increasing across restarts
+ * and a load always sees the revision that matches the rows it read. Recent
+ * changes are logged by revision so clients can fetch just what changed
+ * since the copy they hold.
+ */
+@Service
+@Slf4j
+public class MappingCache {
+
+  /**
+   * Immutable view of both tables at one point in time
+   */
+  public static class Snapshot {
+    private final Map<String, String> vocab;
+    private final Map<String, String> hierarchy;
+    private final long vocabRevision;
+    private final long hierarchyRevision;
+    private volatile ResolutionIndex resolutionIndex;
+
+    Snapshot(Map<String, String> vocab, long vocabRevision, Map<String, String> hierarchy, long hierarchyRevision) {
+      this.vocab = Collections.unmodifiableMap(vocab);
+      this.hierarchy = Collections.unmodifiableMap(hierarchy);
+      this.vocabRevision = vocabRevision;
+      this.hierarchyRevision = hierarchyRevision;
+    }
+
+    public Map<String, String> getVocab() {
+      return vocab;
+    }
+
+    public Map<String, String> getHierarchy() {
+      return hierarchy;
+    }
+
+    /**
+     * Revision of the last write to either table
+     */
+    public long getRevision() {
+      return Math.max(vocabRevision, hierarchyRevision);
+    }
+
+    public long getVocabRevision() {
+      return vocabRevision;
+    }
+
+    public long getHierarchyRevision() {
+      return hierarchyRevision;
+    }
+
+    /**
+     * Lookup index over both maps, built on first use. Two threads racing
+     * to build it get equal indexes, so no lock is needed.
+     */
+    public ResolutionIndex getResolutionIndex() {
+      ResolutionIndex index = resolutionIndex;
+      if (index == null) {
+        index = ResolutionIndex.build(vocab, hierarchy);
+        resolutionIndex = index;
+      }
+      return index;
+    }
+  }
+
+  @Autowired
+  private MappingBatchRepository batchRepo;
+
+  private final TransactionTemplate readTransaction;
+  private final TransactionTemplate writeTransaction;
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+  private volatile HierarchyClosure closure;
+  private volatile SuggestionIndex suggestionIndex;
+  private final MappingChangeLog changeLog;
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  public MappingCache(PlatformTransactionManager transactionManager,
+                      @Value("${mapping.delta.max-changes:100000}") int maxDeltaChanges) {
+    changeLog = new MappingChangeLog(maxDeltaChanges);
+    // Loads run on the reader pool, in their own transaction even when
+    // called from a writer's afterCommit
+    readTransaction = new TransactionTemplate(transactionManager);
+    readTransaction.setReadOnly(true);
+    readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    writeTransaction = new TransactionTemplate(transactionManager);
+  }
+
+  public Snapshot snapshot() {
+    Snapshot current = snapshot.get();
+    if (current != null) {
+      return current;
+    }
+    // First read - the tables only exist once Hibernate has created them
+    writeLock.lock();
+    try {
+      if (snapshot.get() == null) {
+        load();
+      }
+      return snapshot.get();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public Map<String, String> vocab() {
+    return snapshot().getVocab();
+  }
+
+  public Map<String, String> hierarchy() {
+    return snapshot().getHierarchy();
+  }
+
+  public HierarchyClosure hierarchyClosure() {
+    snapshot();
+    return closure;
+  }
+
+  /**
+   * Trigram index over the vocab mappings. Built from the snapshot on first
+   * use, since most instances never need it, and maintained from then on.
+   */
+  public SuggestionIndex suggestionIndex() {
+    SuggestionIndex index = suggestionIndex;
+    if (index != null) {
+      return index;
+    }
+    writeLock.lock();
+    try {
+      if (suggestionIndex == null) {
+        suggestionIndex = SuggestionIndex.build(snapshot().getVocab());
+      }
+      return suggestionIndex;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  // ========== DELTAS ==========
+
+  /**
+   * Vocab changes after revision since, or the whole table if they are no
+   * longer logged
+   */
+  public MappingDelta vocabChangesSince(long since) {
+    return changesSince(snapshot(), since, false);
+  }
+
+  public MappingDelta hierarchyChangesSince(long since) {
+    return changesSince(snapshot(), since, true);
+  }
+
+  /**
+   * Changes to one table between since and the given snapshot. Changes are
+   * logged before their snapshot is published, so everything up to the
+   * snapshot's revision is already here.
+   */
+  public MappingDelta changesSince(Snapshot at, long since, boolean hierarchy) {
+    Map<String, String> changed = new LinkedHashMap<>();
+    List<String> removed = new ArrayList<>();
+    if (changeLog.collect(since, at.getRevision(), hierarchy, changed, removed)) {
+      return new MappingDelta(at.getRevision(), false, changed, removed);
+    }
+    return new MappingDelta(at.getRevision(), true, hierarchy ? at.getHierarchy() : at.getVocab(), List.of());
+  }
+
+  // ========== WRITES ==========
+
+  /**
+   * Takes the write lock until the current transaction completes. Call it
+   * before the transaction writes either table; the put and remove calls
+   * below then publish before the lock is released.
+   */
+  public void lockForWrite() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      throw new IllegalStateException("lockForWrite needs an active transaction");
+    }
+    writeLock.lock();
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCompletion(int status) {
+        // Every afterCommit, so every publish, has run by now
+        writeLock.unlock();
+      }
+    });
+  }
+
+  public void putVocab(String source, String target) {
+    publish(next -> updateVocab(Collections.singletonMap(source, target), List.of(), next));
+  }
+
+  public void putAllVocab(Map<String, String> mappings) {
+    publish(next -> updateVocab(mappings, List.of(), next));
+  }
+
+  public void removeVocab(String source) {
+    publish(next -> updateVocab(Map.of(), List.of(source), next));
+  }
+
+  public void putHierarchy(String source, String parent) {
+    publish(next -> updateHierarchy(Collections.singletonMap(source, parent), List.of(),
+        c -> c.setParent(source, parent), next));
+  }
+
+  public void putAllHierarchy(Map<String, String> mappings) {
+    publish(next -> updateHierarchy(mappings, List.of(), c -> c.setParents(mappings), next));
+  }
+
+  public void removeHierarchy(String source) {
+    publish(next -> updateHierarchy(Map.of(), List.of(source), c -> c.remove(source), next));
+  }
+
+  /**
+   * Re-read both tables, for writes too large to apply one copy at a time
+   * (file imports commit many batches)
+   */
+  public void reload() {
+    // The load reads the bumped counter along with the tables
+    publish(next -> {
+      writeLock.lock();
+      try {
+        load();
+      } finally {
+        writeLock.unlock();
+      }
+    });
+  }
+
+  private void updateVocab(Map<String, String> puts, List<String> removes, long next) {
+    writeLock.lock();
+    try {
+      Snapshot current = snapshot();
+      Map<String, String> vocab = new HashMap<>(current.getVocab());
+      vocab.putAll(puts);
+      vocab.keySet().removeAll(removes);
+      SuggestionIndex index = suggestionIndex;
+      if (index != null) {
+        puts.forEach(index::put);
+        removes.forEach(index::remove);
+      }
+      changeLog.record(next, false, puts, removes);
+      snapshot.set(new Snapshot(vocab, next, current.getHierarchy(), current.getHierarchyRevision()));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void updateHierarchy(Map<String, String> puts, List<String> removes,
+                               Consumer<HierarchyClosure> closureChange, long next) {
+    writeLock.lock();
+    try {
+      Snapshot current = snapshot();
+      Map<String, String> hierarchy = new HashMap<>(current.getHierarchy());
+      hierarchy.putAll(puts);
+      hierarchy.keySet().removeAll(removes);
+      closureChange.accept(closure);
+      changeLog.record(next, true, puts, removes);
+      snapshot.set(new Snapshot(current.getVocab(), current.getVocabRevision(), hierarchy, next));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Read both tables into a new snapshot and closure. Caller holds writeLock.
+   */
+  private void load() {
+    Map<String, String> vocab = new HashMap<>();
+    Map<String, String> hierarchy = new HashMap<>();
+    // One read transaction, so the revision is the one the rows are at
+    long revision = readTransaction.execute(status -> {
+      batchRepo.forEachVocabMapping(vocab::put);
+      batchRepo.forEachHierarchyMapping(hierarchy::put);
+      return batchRepo.currentRevision();
+    });
+    log.info("Loaded {} vocab and {} hierarchy mappings into cache", vocab.size(), hierarchy.size());
+    closure = HierarchyClosure.build(hierarchy);
+    // Rebuilt from the new snapshot when next asked for
+    suggestionIndex = null;
+    changeLog.reset(revision);
+    snapshot.set(new Snapshot(vocab, revision, hierarchy, revision));
+  }
+
+  /**
+   * Numbers a write the caller has made under lockForWrite and applies it
+   * once it commits. The counter is bumped in the caller's transaction, so
+   * a rolled back write never uses up a revision.
+   */
+  private void publish(LongConsumer update) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      // Numbered in a transaction of its own; a bare statement here would
+      // need a second writer connection while the request may hold the one
+      writeTransaction.executeWithoutResult(status -> {
+        lockForWrite();
+        publish(update);
+      });
+      return;
+    }
+    // Taking the lock only now, after writing, could deadlock against a
+    // writer that holds it and waits for the database
+    if (!writeLock.isHeldByCurrentThread()) {
+      throw new IllegalStateException("Call lockForWrite before writing mappings");
+    }
+    long next = batchRepo.nextRevision();
+    afterCommit(() -> update.accept(next));
+  }
+
+  /**
+   * Runs the update once the current transaction commits, so readers never
+   * see a write that is later rolled back
+   */
+  private void afterCommit(Runnable update) {
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        update.run();
+      }
+    });
+  }
+}
@@ -0,0 +1,104 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded log of recent per-key mapping changes, tagged with the revision
+ * that made them. Clients that already hold the mappings as of some
+ * revision can catch up from here instead of downloading whole tables.
+ * Once the log overflows, or after a full reload, older revisions can no
+ * longer be caught up and callers fall back to a full copy.
+ */
+public class MappingChangeLog {
+
+  private static class Change {
+    final long revision;
+    final boolean hierarchy;
+    final String source;
+    final String value;
+    final boolean removed;
+
+    Change(long revision, boolean hierarchy, String source, String value, boolean removed) {
+      this.revision = revision;
+      this.hierarchy = hierarchy;
+      this.source = source;
+      this.value = value;
+      this.removed = removed;
+    }
+  }
+
+  private final int maxChanges;
+  private final Deque<Change> changes = new ArrayDeque<>();
+  private long floor;
+
+  public MappingChangeLog(int maxChanges) {
+    this.maxChanges = Math.max(1, maxChanges);
+  }
+
+  /**
+   * Forget every change; only clients at this revision or later can be
+   * caught up
+   */
+  public synchronized void reset(long revision) {
+    changes.clear();
+    floor = revision;
+  }
+
+  public synchronized void record(long revision, boolean hierarchy, Map<String, String> puts, Collection<String> removes) {
+    for (Map.Entry<String, String> e : puts.entrySet()) {
+      add(new Change(revision, hierarchy, e.getKey(), e.getValue(), false));
+    }
+    for (String source : removes) {
+      add(new Change(revision, hierarchy, source, null, true));
+    }
+  }
+
+  /**
+   * Latest change per key made after since and up to upTo, most recently
+   * changed first. Removed keys go to removed. Returns false, leaving both
+   * untouched, if changes after since are no longer held.
+   */
+  public synchronized boolean collect(long since, long upTo, boolean hierarchy,
+                                      Map<String, String> changed, Collection<String> removed) {
+    if (since < floor || since > upTo) {
+      return false;
+    }
+    Map<String, Change> latest = new LinkedHashMap<>();
+    // Newest first, so the first change seen for a key is its latest
+    Iterator<Change> it = changes.descendingIterator();
+    while (it.hasNext()) {
+      Change change = it.next();
+      if (change.revision <= since) {
+        break;
+      }
+      if (change.revision <= upTo && change.hierarchy == hierarchy) {
+        latest.putIfAbsent(change.source, change);
+      }
+    }
+    for (Change change : latest.values()) {
+      if (change.removed) {
+        removed.add(change.source);
+      } else {
+        changed.put(change.source, change.value);
+      }
+    }
+    return true;
+  }
+
+  public synchronized int size() {
+    return changes.size();
+  }
+
+  private void add(Change change) {
+    changes.addLast(change);
+    while (changes.size() > maxChanges) {
+      // Catching up from before the dropped change is no longer possible
+      floor = Math.max(floor, changes.removeFirst().revision);
+    }
+  }
+}
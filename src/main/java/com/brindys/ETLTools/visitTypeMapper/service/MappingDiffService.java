@@ -0,0 +1,155 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.brindys.ETLTools.visitTypeMapper.model.MappingVersion;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingBatchRepository;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingVersionEntryRepository;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingVersionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Diffs two mappings, each a committed version or the live tables, by
+ * walking both as key-sorted streams side by side. Time is linear in the
+ * two sizes and memory is constant: neither side is loaded, and changes go
+ * to the listener as they are found, in key order.
+ */
+@Service
+public class MappingDiffService {
+
+  public static final String LIVE = "live";
+
+  // Keys the page adds to each commit; not mappings, and never live
+  private static final String METADATA_PREFIX = "_metadata_";
+
+  public interface DiffListener {
+    void added(String key, String after) throws IOException;
+
+    void removed(String key, String before) throws IOException;
+
+    void changed(String key, String before, String after) throws IOException;
+  }
+
+  @Autowired
+  private MappingVersionRepository versionRepo;
+
+  @Autowired
+  private MappingVersionEntryRepository entryRepo;
+
+  @Autowired
+  private MappingBatchRepository batchRepo;
+
+  private final TransactionTemplate readTransaction;
+
+  public MappingDiffService(PlatformTransactionManager transactionManager) {
+    readTransaction = new TransactionTemplate(transactionManager);
+    readTransaction.setReadOnly(true);
+  }
+
+  /**
+   * Whether the revision is "live" or a stored version. Throws
+   * IllegalArgumentException if it is neither a number nor "live".
+   */
+  public boolean exists(String revision) {
+    if (LIVE.equals(revision)) {
+      return true;
+    }
+    long version = parse(revision);
+    return Boolean.TRUE.equals(readTransaction.execute(status -> versionRepo.existsById(version)));
+  }
+
+  /**
+   * Reports every key that differs going from one revision to the other.
+   * Both sides are read in one transaction, so the live side cannot change
+   * part way through.
+   */
+  public void diff(String from, String to, DiffListener listener) throws IOException {
+    try {
+      readTransaction.executeWithoutResult(status -> {
+        try (Stream<Map.Entry<String, String>> before = open(from);
+             Stream<Map.Entry<String, String>> after = open(to)) {
+          merge(before.iterator(), after.iterator(), listener);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Stream<Map.Entry<String, String>> open(String revision) {
+    if (LIVE.equals(revision)) {
+      return batchRepo.streamFlattened();
+    }
+    long version = parse(revision);
+    long checkpoint = versionRepo.findFirstByCheckpointTrueAndIdLessThanEqualOrderByIdDesc(version)
+        .map(MappingVersion::getId)
+        .orElseThrow(() -> new IllegalStateException("No checkpoint before mapping version " + version));
+    return entryRepo.streamVersion(checkpoint, version)
+        .filter(e -> !e.getKey().startsWith(METADATA_PREFIX));
+  }
+
+  private static long parse(String revision) {
+    try {
+      return Long.parseLong(revision);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Revision must be a version number or \"" + LIVE + "\": " + revision);
+    }
+  }
+
+  /**
+   * Walks two key-sorted entry streams in step. A key only in before was
+   * removed, only in after was added, and in both with different values
+   * was changed.
+   */
+  public static void merge(Iterator<Map.Entry<String, String>> before, Iterator<Map.Entry<String, String>> after,
+                           DiffListener listener) throws IOException {
+    Map.Entry<String, String> b = before.hasNext() ? before.next() : null;
+    Map.Entry<String, String> a = after.hasNext() ? after.next() : null;
+    while (b != null || a != null) {
+      int cmp = b == null ? 1 : a == null ? -1 : compareKeys(b.getKey(), a.getKey());
+      if (cmp < 0) {
+        listener.removed(b.getKey(), b.getValue());
+        b = before.hasNext() ? before.next() : null;
+      } else if (cmp > 0) {
+        listener.added(a.getKey(), a.getValue());
+        a = after.hasNext() ? after.next() : null;
+      } else {
+        if (!Objects.equals(b.getValue(), a.getValue())) {
+          listener.changed(b.getKey(), b.getValue(), a.getValue());
+        }
+        b = before.hasNext() ? before.next() : null;
+        a = after.hasNext() ? after.next() : null;
+      }
+    }
+  }
+
+  /**
+   * Code point order, which is the order SQLite's default collation sorts
+   * UTF-8 text in. String.compareTo differs for characters outside the
+   * BMP, and the merge needs both sides in exactly the same order.
+   */
+  public static int compareKeys(String x, String y) {
+    int i = 0;
+    int j = 0;
+    while (i < x.length() && j < y.length()) {
+      int cx = x.codePointAt(i);
+      int cy = y.codePointAt(j);
+      if (cx != cy) {
+        return Integer.compare(cx, cy);
+      }
+      i += Character.charCount(cx);
+      j += Character.charCount(cy);
+    }
+    return Integer.compare(x.length() - i, y.length() - j);
+  }
+}
@@ -0,0 +1,181 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.brindys.ETLTools.visitTypeMapper.dto.ImportSummary;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingBatchRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Imports mapping files row by row. Rows are upserted a batch at a time as
+ * they are parsed, each batch in its own transaction, so memory use depends
+ * on the batch size rather than the size of the file. Each batch is checked,
+ * written and published to the cache under the cache's write lock, so other
+ * writers can run between batches but never inside one.
+ */
+@Service
+@Slf4j
+public class MappingImportService {
+
+  /**
+   * Told about each committed batch and each rejected row while an import runs
+   */
+  public interface ImportListener {
+    void onProgress(long imported) throws IOException;
+
+    void onRejected(int line, String reason) throws IOException;
+  }
+
+  /**
+   * Extra per-row check, run under the write lock when the batch is written,
+   * given the rows of the batch already accepted. Returns the reason to
+   * reject the row, or null.
+   */
+  private interface RowCheck {
+    String check(String source, String target, Map<String, String> pending);
+  }
+
+  @Autowired
+  private MappingBatchRepository batchRepo;
+
+  @Autowired
+  private MappingCache mappingCache;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Value("${mapping.bulk.batch-size:1000}")
+  private int batchSize;
+
+  @Value("${mapping.import.max-reported-errors:1000}")
+  private int maxReportedErrors;
+
+  public ImportSummary importVocabMappings(Reader reader, boolean header, ImportListener listener) throws IOException {
+    return importRows(reader, header, listener, batchRepo::upsertVocabMappings,
+        (source, target, accepted) -> null, mappingCache::putAllVocab);
+  }
+
+  public ImportSummary importHierarchyMappings(Reader reader, boolean header, ImportListener listener) throws IOException {
+    // Earlier batches, and any other writes, are in the closure by the time
+    // this batch holds the lock, so each row only has to be checked against
+    // the closure plus the rows accepted before it
+    return importRows(reader, header, listener, batchRepo::upsertHierarchyMappings,
+        (source, target, accepted) -> {
+          List<String> cycle = mappingCache.hierarchyClosure().findCycle(source, target, accepted);
+          return cycle == null ? null : "Would create a hierarchy cycle: " + String.join(" -> ", cycle);
+        },
+        mappingCache::putAllHierarchy);
+  }
+
+  private ImportSummary importRows(Reader reader, boolean header, ImportListener listener,
+                                   Consumer<Collection<Map.Entry<String, String>>> upsert,
+                                   RowCheck check, Consumer<Map<String, String>> publish) throws IOException {
+    // Keyed by source, so a source repeated within a batch is written once
+    Map<String, String> batch = new LinkedHashMap<>();
+    // Line each source in the batch was last read from, for rejections
+    Map<String, Integer> lines = new HashMap<>();
+    int batchRows = 0;
+    long imported = 0;
+    long rejected = 0;
+
+    try (MappingRowReader rows = new MappingRowReader(reader)) {
+      boolean skipHeader = header;
+      MappingRowReader.Row row;
+      while ((row = rows.next()) != null) {
+        if (skipHeader) {
+          skipHeader = false;
+          continue;
+        }
+
+        String reason = row.error != null ? row.error : validate(row.fields);
+        if (reason != null) {
+          report(listener, ++rejected, row.line, reason);
+          continue;
+        }
+
+        String source = row.fields.get(0);
+        batch.put(source, row.fields.size() > 1 ? row.fields.get(1) : "");
+        lines.put(source, row.line);
+        if (++batchRows >= batchSize) {
+          Map<Integer, String> refused = flush(batch, lines, upsert, check, publish);
+          for (Map.Entry<Integer, String> r : refused.entrySet()) {
+            report(listener, ++rejected, r.getKey(), r.getValue());
+          }
+          imported += batchRows - refused.size();
+          batchRows = 0;
+          listener.onProgress(imported);
+        }
+      }
+
+      if (batchRows > 0) {
+        Map<Integer, String> refused = flush(batch, lines, upsert, check, publish);
+        for (Map.Entry<Integer, String> r : refused.entrySet()) {
+          report(listener, ++rejected, r.getKey(), r.getValue());
+        }
+        imported += batchRows - refused.size();
+        listener.onProgress(imported);
+      }
+    }
+
+    log.info("Imported {} mappings, rejected {} rows", imported, rejected);
+    return new ImportSummary(imported, rejected);
+  }
+
+  // Keep counting, but stop reporting once a file is clearly wrong
+  private void report(ImportListener listener, long rejected, int line, String reason) throws IOException {
+    if (rejected <= maxReportedErrors) {
+      listener.onRejected(line, reason);
+    }
+  }
+
+  /**
+   * Checks, writes and publishes one batch in a transaction holding the
+   * cache's write lock. Returns the rows the check refused, by line.
+   */
+  private Map<Integer, String> flush(Map<String, String> batch, Map<String, Integer> lines,
+                                     Consumer<Collection<Map.Entry<String, String>>> upsert,
+                                     RowCheck check, Consumer<Map<String, String>> publish) {
+    Map<Integer, String> refused = new TreeMap<>();
+    transactionTemplate.executeWithoutResult(status -> {
+      mappingCache.lockForWrite();
+      Map<String, String> accepted = new LinkedHashMap<>();
+      batch.forEach((source, target) -> {
+        String reason = check.check(source, target, accepted);
+        if (reason != null) {
+          refused.put(lines.get(source), reason);
+        } else {
+          accepted.put(source, target);
+        }
+      });
+      if (!accepted.isEmpty()) {
+        upsert.accept(accepted.entrySet());
+        publish.accept(accepted);
+      }
+    });
+    batch.clear();
+    lines.clear();
+    return refused;
+  }
+
+  private String validate(List<String> fields) {
+    if (fields.get(0).isEmpty()) {
+      return "Source visit type required";
+    }
+    if (fields.size() > 2) {
+      return "Expected source and target, found " + fields.size() + " columns";
+    }
+    return null;
+  }
+}
@@ -0,0 +1,196 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.brindys.ETLTools.support.github.GitHubService;
+import com.brindys.ETLTools.support.github.dto.CommitRequest;
+import com.brindys.ETLTools.support.github.dto.CommitResponse;
+import com.brindys.ETLTools.visitTypeMapper.model.MappingVersion;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingVersionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes committed mapping versions to GitHub from a single background
+ * worker. The queue is the PENDING rows of mapping_versions, so it
+ * survives restarts. A burst of commits is pushed as one: the worker waits
+ * until no commit has arrived for coalesce-ms, then pushes the newest
+ * version and marks the older ones COALESCED. A failed push stays PENDING
+ * and is retried with exponential backoff.
+ * <p>
+ * A push uploads only the keys the stored deltas changed since the last
+ * pushed version. It is a full snapshot when there is no earlier push, or
+ * when a local checkpoint lies in between, so GitHub checkpoints follow the
+ * store's own.
+ */
+@Service
+@Slf4j
+public class MappingReplicationQueue {
+
+  @Autowired
+  private MappingVersionRepository versionRepo;
+
+  @Autowired
+  private MappingVersionStore versionStore;
+
+  @Autowired
+  private GitHubService gitHubService;
+
+  @Value("${mapping.history.coalesce-ms:5000}")
+  private long coalesceMillis;
+
+  // A steady stream of commits is still pushed at least this often
+  @Value("${mapping.history.coalesce-max-wait-ms:60000}")
+  private long maxWaitMillis;
+
+  @Value("${mapping.history.retry-base-ms:5000}")
+  private long retryBaseMillis;
+
+  @Value("${mapping.history.retry-max-ms:600000}")
+  private long retryMaxMillis;
+
+  private final TransactionTemplate writeTransaction;
+  private final TransactionTemplate readTransaction;
+
+  public MappingReplicationQueue(PlatformTransactionManager transactionManager) {
+    writeTransaction = new TransactionTemplate(transactionManager);
+    readTransaction = new TransactionTemplate(transactionManager);
+    readTransaction.setReadOnly(true);
+  }
+
+  /**
+   * The version's push status, or null if there is no such version
+   */
+  public MappingVersion status(long version) {
+    return readTransaction.execute(status -> versionRepo.findById(version).orElse(null));
+  }
+
+  @Scheduled(fixedDelayString = "${mapping.history.replication-poll-ms:1000}")
+  public void drain() {
+    List<MappingVersion> pending = readTransaction.execute(status ->
+        versionRepo.findByGithubStatusOrderByIdAsc(MappingVersion.Replication.PENDING));
+    if (pending.isEmpty()) {
+      return;
+    }
+    MappingVersion newest = pending.get(pending.size() - 1);
+    LocalDateTime now = LocalDateTime.now();
+    boolean burstOver = newest.getCreatedAt().plus(Duration.ofMillis(coalesceMillis)).isBefore(now)
+        || pending.get(0).getCreatedAt().plus(Duration.ofMillis(maxWaitMillis)).isBefore(now);
+    LocalDateTime nextAttemptAt = nextAttemptAt(pending);
+    boolean retryDue = nextAttemptAt == null || !nextAttemptAt.isAfter(now);
+    if (!burstOver || !retryDue) {
+      return;
+    }
+    push(pending, newest);
+  }
+
+  private void push(List<MappingVersion> pending, MappingVersion newest) {
+    MappingVersion base = readTransaction.execute(status -> versionRepo
+        .findFirstByGithubStatusAndGithubFileNotNullOrderByIdDesc(MappingVersion.Replication.PUSHED)
+        .orElse(null));
+
+    CommitResponse response;
+    try {
+      Map<String, String> changes = base != null ? versionStore.delta(base.getId(), newest.getId()) : null;
+      if (changes != null) {
+        response = gitHubService.commitDelta(base.getGithubFile(), changes, message(pending), author(pending));
+      } else {
+        Map<String, String> mapping = versionStore.load(newest.getId());
+        response = gitHubService.commitMapping(
+            new CommitRequest(new LinkedHashMap<>(mapping), message(pending), author(pending)));
+      }
+    } catch (RuntimeException e) {
+      log.error("Error pushing mapping version {} to GitHub", newest.getId(), e);
+      response = new CommitResponse(false, e.getMessage());
+    }
+
+    CommitResponse result = response;
+    writeTransaction.executeWithoutResult(status -> {
+      if (result.isSuccess()) {
+        for (MappingVersion version : pending) {
+          version.setGithubStatus(version == newest
+              ? MappingVersion.Replication.PUSHED
+              : MappingVersion.Replication.COALESCED);
+          version.setGithubSha(result.getCommitSha());
+          version.setGithubUrl(result.getCommitUrl());
+          version.setGithubFile(result.getFilename());
+          version.setGithubError(null);
+          version.setGithubNextAttemptAt(null);
+        }
+        versionRepo.saveAll(pending);
+      } else {
+        // Recorded on the newest, but read across every pending row, so a
+        // commit arriving during an outage does not reset the backoff
+        int attempts = attempts(pending) + 1;
+        long delay = Math.min(retryMaxMillis, retryBaseMillis << Math.min(attempts - 1, 20));
+        newest.setGithubAttempts(attempts);
+        newest.setGithubNextAttemptAt(LocalDateTime.now().plus(Duration.ofMillis(delay)));
+        newest.setGithubError(result.getMessage());
+        versionRepo.save(newest);
+        log.warn("Push of mapping version {} failed (attempt {}), retrying in {} ms: {}",
+            newest.getId(), attempts, delay, result.getMessage());
+      }
+    });
+    if (result.isSuccess()) {
+      log.info("Pushed mapping version {} to GitHub ({} versions)", newest.getId(), pending.size());
+    }
+  }
+
+  /**
+   * Latest retry time set on any pending version, or null if none failed
+   */
+  private static LocalDateTime nextAttemptAt(List<MappingVersion> pending) {
+    return pending.stream()
+        .map(MappingVersion::getGithubNextAttemptAt)
+        .filter(Objects::nonNull)
+        .max(Comparator.naturalOrder())
+        .orElse(null);
+  }
+
+  /**
+   * Failed pushes so far of the pending versions
+   */
+  private static int attempts(List<MappingVersion> pending) {
+    return pending.stream()
+        .map(MappingVersion::getGithubAttempts)
+        .filter(Objects::nonNull)
+        .max(Comparator.naturalOrder())
+        .orElse(0);
+  }
+
+  private static String message(List<MappingVersion> versions) {
+    MappingVersion newest = versions.get(versions.size() - 1);
+    if (versions.size() == 1) {
+      return newest.getMessage();
+    }
+    StringBuilder message = new StringBuilder(newest.getMessage())
+        .append("\n\nIncludes mapping versions ")
+        .append(versions.get(0).getId()).append("-").append(newest.getId()).append(":");
+    for (MappingVersion version : versions) {
+      message.append("\n- v").append(version.getId()).append(": ").append(version.getMessage());
+    }
+    return message.toString();
+  }
+
+  private static String author(List<MappingVersion> versions) {
+    Set<String> authors = versions.stream()
+        .map(MappingVersion::getAuthor)
+        .filter(a -> a != null && !a.isEmpty())
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+    return String.join(", ", authors);
+  }
+}
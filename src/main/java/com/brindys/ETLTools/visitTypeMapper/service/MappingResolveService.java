@@ -0,0 +1,150 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Resolves batches of source visit types to their vocab target and hierarchy
+ * parent. Input is read and output written one code at a time, against a
+ * single snapshot, so a batch of any size sees one consistent version of
+ * the mappings and never has to fit in memory.
+ */
+@Service
+public class MappingResolveService {
+
+  // Closing a generator must not close the response stream under it
+  private final JsonFactory jsonFactory = new JsonFactory()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  @Autowired
+  private MappingCache mappingCache;
+
+  /**
+   * Starts reading a JSON array of codes, failing before anything is written
+   * if the body is not an array
+   */
+  public JsonParser openJsonArray(Reader reader) throws IOException {
+    JsonParser parser = jsonFactory.createParser(reader);
+    if (parser.nextToken() != JsonToken.START_ARRAY) {
+      parser.close();
+      throw new IllegalArgumentException("Expected a JSON array of source visit types");
+    }
+    return parser;
+  }
+
+  /**
+   * JSON array of codes in, JSON array of resolutions out
+   */
+  public void resolveJsonArray(JsonParser parser, OutputStream out) throws IOException {
+    ResolutionIndex index = mappingCache.snapshot().getResolutionIndex();
+    try (parser; JsonGenerator generator = jsonFactory.createGenerator(out)) {
+      generator.writeStartArray();
+      JsonToken token;
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+        writeResolution(generator, index, readCode(parser, token));
+      }
+      generator.writeEndArray();
+    }
+  }
+
+  /**
+   * One JSON value per line in, one resolution object per line out. A line
+   * may hold a bare string or an object with a "source" field.
+   */
+  public void resolveNdjson(Reader reader, OutputStream out) throws IOException {
+    ResolutionIndex index = mappingCache.snapshot().getResolutionIndex();
+    try (JsonParser parser = jsonFactory.createParser(reader);
+         JsonGenerator generator = jsonFactory.createGenerator(out)) {
+      generator.setRootValueSeparator(null);
+      JsonToken token;
+      while ((token = parser.nextToken()) != null) {
+        writeResolution(generator, index, readCode(parser, token));
+        generator.writeRaw('\n');
+      }
+    }
+  }
+
+  /**
+   * First column of each CSV/TSV row in, "source,target,parent" rows out
+   */
+  public void resolveCsv(Reader reader, boolean header, Writer out) throws IOException {
+    ResolutionIndex index = mappingCache.snapshot().getResolutionIndex();
+    try (MappingRowReader rows = new MappingRowReader(reader)) {
+      out.write("source,target,parent\n");
+      boolean skipHeader = header;
+      MappingRowReader.Row row;
+      while ((row = rows.next()) != null) {
+        if (skipHeader) {
+          skipHeader = false;
+          continue;
+        }
+        String source = row.error == null ? row.fields.get(0) : "";
+        int slot = index.find(source);
+        writeCsvField(out, source);
+        out.write(',');
+        writeCsvField(out, index.target(slot));
+        out.write(',');
+        writeCsvField(out, index.parent(slot));
+        out.write('\n');
+      }
+    }
+    out.flush();
+  }
+
+  private String readCode(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.START_OBJECT) {
+      String source = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if ("source".equals(field) && value.isScalarValue()) {
+          source = parser.getValueAsString();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return source;
+    }
+    if (token == JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+  }
+
+  private void writeResolution(JsonGenerator generator, ResolutionIndex index, String source) throws IOException {
+    int slot = index.find(source);
+    generator.writeStartObject();
+    generator.writeStringField("source", source);
+    generator.writeStringField("target", index.target(slot));
+    generator.writeStringField("parent", index.parent(slot));
+    generator.writeEndObject();
+  }
+
+  private void writeCsvField(Writer out, String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r' || c == '\t';
+    }
+    if (!quote) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    out.write(value.replace("\"", "\"\""));
+    out.write('"');
+  }
+}
@@ -0,0 +1,179 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads mapping rows from a CSV or TSV upload one record at a time, so the
+ * whole file never has to be held in memory. The delimiter is whichever of
+ * tab or comma first appears outside quotes. Fields may be quoted ("" is an
+ * escaped quote, and a quoted field may span lines); unquoted fields are
+ * trimmed and blank lines are skipped.
+ */
+public class MappingRowReader implements Closeable {
+
+  static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+  /**
+   * One record - its fields, or the reason it could not be read
+   */
+  public static class Row {
+    public final int line;
+    public final List<String> fields;
+    public final String error;
+
+    Row(int line, List<String> fields, String error) {
+      this.line = line;
+      this.fields = fields;
+      this.error = error;
+    }
+  }
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int pos;
+  private int limit;
+
+  private int line = 1;
+  private char delimiter;
+  private boolean started;
+  private final StringBuilder field = new StringBuilder();
+
+  public MappingRowReader(Reader in) {
+    this.in = in;
+  }
+
+  /**
+   * The next non-blank record, or null at the end of the input
+   */
+  public Row next() throws IOException {
+    while (true) {
+      int startLine = line;
+      List<String> fields = new ArrayList<>(2);
+      String error = null;
+      boolean quoted = false;
+      boolean wasQuoted = false;
+      boolean sawAny = false;
+      field.setLength(0);
+
+      while (true) {
+        int c = read();
+        if (c < 0) {
+          if (quoted) {
+            error = "Unterminated quoted field";
+          }
+          break;
+        }
+        sawAny = true;
+
+        if (quoted) {
+          if (c == '"') {
+            if (peek() == '"') {
+              read();
+              error = append('"', error);
+            } else {
+              quoted = false;
+            }
+          } else {
+            if (c == '\n') {
+              line++;
+            }
+            error = append((char) c, error);
+          }
+          continue;
+        }
+
+        if (c == '\r') {
+          if (peek() == '\n') {
+            read();
+          }
+          c = '\n';
+        }
+        if (c == '\n') {
+          line++;
+          break;
+        }
+        if (c == '"' && !wasQuoted && field.toString().isBlank()) {
+          quoted = true;
+          wasQuoted = true;
+          field.setLength(0);
+        } else if (isDelimiter((char) c)) {
+          fields.add(wasQuoted ? field.toString() : field.toString().trim());
+          field.setLength(0);
+          wasQuoted = false;
+        } else {
+          error = append((char) c, error);
+        }
+      }
+
+      if (!sawAny) {
+        return null;
+      }
+      fields.add(wasQuoted ? field.toString() : field.toString().trim());
+
+      if (error == null && fields.size() == 1 && fields.get(0).isEmpty() && !wasQuoted) {
+        continue;
+      }
+      return new Row(startLine, error == null ? fields : List.of(), error);
+    }
+  }
+
+  private String append(char c, String error) {
+    if (field.length() < MAX_FIELD_LENGTH) {
+      field.append(c);
+      return error;
+    }
+    // Keep reading to the end of the record, but stop buffering it
+    return error != null ? error : "Field longer than " + MAX_FIELD_LENGTH + " characters";
+  }
+
+  private boolean isDelimiter(char c) {
+    if (delimiter == 0 && (c == '\t' || c == ',')) {
+      delimiter = c;
+    }
+    return delimiter != 0 && c == delimiter;
+  }
+
+  private int read() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos++];
+  }
+
+  private int peek() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos];
+  }
+
+  private boolean fill() throws IOException {
+    int n;
+    do {
+      n = in.read(buffer, 0, buffer.length);
+    } while (n == 0);
+    if (n < 0) {
+      return false;
+    }
+    pos = 0;
+    limit = n;
+    // Skip a byte order mark left at the start of the file
+    if (!started) {
+      started = true;
+      if (buffer[0] == '\uFEFF') {
+        pos = 1;
+        return pos < limit || fill();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
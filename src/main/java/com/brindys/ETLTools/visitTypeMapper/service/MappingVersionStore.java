@@ -0,0 +1,209 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.brindys.ETLTools.visitTypeMapper.model.MappingVersion;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingVersionEntryRepository;
+import com.brindys.ETLTools.visitTypeMapper.repository.MappingVersionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Local, append-only history of committed mappings, kept in SQLite. Each
+ * version stores only the keys changed since the one before, except for a
+ * full checkpoint every checkpoint-interval versions (or whenever most of
+ * the mapping changed). Loading a version replays the deltas since its
+ * checkpoint, so restores never leave the machine; MappingDiffService
+ * diffs versions without loading them. Pushing each version to GitHub is
+ * an optional copy made by MappingReplicationQueue.
+ */
+@Service
+@Slf4j
+public class MappingVersionStore {
+
+  /**
+   * The newest version, kept so the next commit can be compared against it
+   * without a replay
+   */
+  private static class Head {
+    final long version;
+    // Versions stored as deltas since the last checkpoint
+    final long deltas;
+    final Map<String, String> mapping;
+
+    Head(long version, long deltas, Map<String, String> mapping) {
+      this.version = version;
+      this.deltas = deltas;
+      this.mapping = mapping;
+    }
+  }
+
+  @Autowired
+  private MappingVersionRepository versionRepo;
+
+  @Autowired
+  private MappingVersionEntryRepository entryRepo;
+
+  @Value("${mapping.history.checkpoint-interval:50}")
+  private int checkpointInterval;
+
+  @Value("${mapping.history.github-push:true}")
+  private boolean githubPush;
+
+  private final TransactionTemplate writeTransaction;
+  private final TransactionTemplate readTransaction;
+  private final Object writeLock = new Object();
+  private volatile Head head;
+
+  public MappingVersionStore(PlatformTransactionManager transactionManager) {
+    writeTransaction = new TransactionTemplate(transactionManager);
+    readTransaction = new TransactionTemplate(transactionManager);
+    readTransaction.setReadOnly(true);
+  }
+
+  // ========== COMMITS ==========
+
+  /**
+   * Stores the mapping as the next version and, if enabled, marks it for
+   * MappingReplicationQueue to push to GitHub. Returns once the version is
+   * saved locally.
+   */
+  public MappingVersion commit(Map<String, String> mapping, String message, String author) {
+    MappingVersion saved;
+    synchronized (writeLock) {
+      Head previous = head();
+      Map<String, String> changes = changes(previous != null ? previous.mapping : Map.of(), mapping);
+      boolean checkpoint = previous == null
+          || previous.deltas + 1 >= checkpointInterval
+          || changes.size() * 2 > mapping.size();
+
+      MappingVersion version = new MappingVersion();
+      version.setMessage(message);
+      version.setAuthor(author);
+      version.setCreatedAt(LocalDateTime.now());
+      version.setCheckpoint(checkpoint);
+      version.setEntryCount(mapping.size());
+      version.setChangeCount(changes.size());
+      version.setGithubStatus(githubPush ? MappingVersion.Replication.PENDING : MappingVersion.Replication.OFF);
+
+      saved = writeTransaction.execute(status -> {
+        MappingVersion row = versionRepo.save(version);
+        entryRepo.insertEntries(row.getId(), checkpoint ? mapping.entrySet() : changes.entrySet());
+        return row;
+      });
+      head = new Head(saved.getId(), checkpoint ? 0 : previous.deltas + 1, new HashMap<>(mapping));
+    }
+    log.info("Saved mapping version {} ({} of {} keys changed{})", saved.getId(), saved.getChangeCount(),
+        saved.getEntryCount(), saved.isCheckpoint() ? ", checkpoint" : "");
+    return saved;
+  }
+
+  /**
+   * Keys added or changed in the new mapping with their values, and keys
+   * it dropped with null
+   */
+  private static Map<String, String> changes(Map<String, String> before, Map<String, String> after) {
+    Map<String, String> changes = new LinkedHashMap<>();
+    for (Map.Entry<String, String> e : after.entrySet()) {
+      if (!Objects.equals(before.get(e.getKey()), e.getValue()) || !before.containsKey(e.getKey())) {
+        changes.put(e.getKey(), e.getValue());
+      }
+    }
+    for (String key : before.keySet()) {
+      if (!after.containsKey(key)) {
+        changes.put(key, null);
+      }
+    }
+    return changes;
+  }
+
+  // ========== READS ==========
+
+  /**
+   * Every version, newest first
+   */
+  public List<MappingVersion> history() {
+    return readTransaction.execute(status -> versionRepo.findAllByOrderByIdDesc());
+  }
+
+  /**
+   * The whole mapping as of the version, or null if there is no such version
+   */
+  public Map<String, String> load(long version) {
+    Head current = head;
+    if (current != null && current.version == version) {
+      return new HashMap<>(current.mapping);
+    }
+    return readTransaction.execute(status -> replay(version));
+  }
+
+  /**
+   * Keys changed going from version from to the later version to, read
+   * straight from the stored deltas: changed keys with their new value,
+   * removed keys with null. Null when a checkpoint lies between them, as a
+   * checkpoint does not record the keys it dropped; the caller then needs
+   * the whole mapping.
+   */
+  public Map<String, String> delta(long from, long to) {
+    return readTransaction.execute(status -> {
+      long checkpoint = versionRepo.findFirstByCheckpointTrueAndIdLessThanEqualOrderByIdDesc(to)
+          .map(MappingVersion::getId)
+          .orElse(to);
+      if (checkpoint > from) {
+        return null;
+      }
+      Map<String, String> changes = new LinkedHashMap<>();
+      // Version order, so a key's last change wins
+      entryRepo.forEachEntry(from + 1, to, (version, key, value) -> changes.put(key, value));
+      return changes;
+    });
+  }
+
+  /**
+   * Rebuilds a version from its checkpoint and the deltas after it. Runs in
+   * the caller's transaction.
+   */
+  private Map<String, String> replay(long version) {
+    if (!versionRepo.existsById(version)) {
+      return null;
+    }
+    MappingVersion checkpoint = versionRepo.findFirstByCheckpointTrueAndIdLessThanEqualOrderByIdDesc(version)
+        .orElseThrow(() -> new IllegalStateException("No checkpoint before mapping version " + version));
+    Map<String, String> mapping = new HashMap<>();
+    entryRepo.forEachEntry(checkpoint.getId(), version, (v, key, value) -> {
+      if (value == null) {
+        mapping.remove(key);
+      } else {
+        mapping.put(key, value);
+      }
+    });
+    return mapping;
+  }
+
+  /**
+   * Newest version, read from the database on first use. Caller holds
+   * writeLock.
+   */
+  private Head head() {
+    if (head == null) {
+      head = readTransaction.execute(status -> versionRepo.findFirstByOrderByIdDesc()
+          .map(latest -> {
+            long checkpoint = versionRepo.findFirstByCheckpointTrueAndIdLessThanEqualOrderByIdDesc(latest.getId())
+                .map(MappingVersion::getId)
+                .orElse(latest.getId());
+            return new Head(latest.getId(), versionRepo.countByIdGreaterThan(checkpoint), replay(latest.getId()));
+          })
+          .orElse(null));
+    }
+    return head;
+  }
+}
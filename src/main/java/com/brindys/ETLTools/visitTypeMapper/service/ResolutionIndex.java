@@ -0,0 +1,90 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import java.util.Map;
+
+/**
+ * Immutable open-addressing hash index from source visit type to its vocab
+ * target and hierarchy parent. Keys and both values sit in parallel arrays
+ * at no more than half load, so a lookup is one hash and usually a single
+ * probe, with no entry objects to chase.
+ */
+public final class ResolutionIndex {
+
+  private final String[] keys;
+  private final String[] targets;
+  private final String[] parents;
+  private final int mask;
+  private int size;
+
+  private ResolutionIndex(int capacity) {
+    keys = new String[capacity];
+    targets = new String[capacity];
+    parents = new String[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Index every source that has a vocab target, a hierarchy parent, or both
+   */
+  public static ResolutionIndex build(Map<String, String> vocab, Map<String, String> hierarchy) {
+    // Power of two at least twice the number of keys
+    int expected = Math.max(2, vocab.size() + hierarchy.size());
+    ResolutionIndex index = new ResolutionIndex(Integer.highestOneBit(expected - 1) << 2);
+
+    for (Map.Entry<String, String> e : vocab.entrySet()) {
+      index.targets[index.insert(e.getKey())] = e.getValue();
+    }
+    for (Map.Entry<String, String> e : hierarchy.entrySet()) {
+      index.parents[index.insert(e.getKey())] = e.getValue();
+    }
+    return index;
+  }
+
+  /**
+   * Slot holding the source, or -1 if it is not mapped at all
+   */
+  public int find(String source) {
+    if (source == null) {
+      return -1;
+    }
+    int slot = spread(source.hashCode()) & mask;
+    String key;
+    while ((key = keys[slot]) != null) {
+      if (key.equals(source)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  public String target(int slot) {
+    return slot < 0 ? null : targets[slot];
+  }
+
+  public String parent(int slot) {
+    return slot < 0 ? null : parents[slot];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int insert(String source) {
+    int slot = spread(source.hashCode()) & mask;
+    String key;
+    while ((key = keys[slot]) != null) {
+      if (key.equals(source)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = source;
+    size++;
+    return slot;
+  }
+
+  private static int spread(int h) {
+    return h ^ (h >>> 16);
+  }
+}
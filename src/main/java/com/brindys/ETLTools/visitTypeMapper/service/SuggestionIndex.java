@@ -0,0 +1,499 @@
+package com.brindys.ETLTools.visitTypeMapper.service;
+
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingSuggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram inverted index over the vocab mappings, for suggesting targets
+ * for unmapped source visit types. Every mapped source and every distinct
+ * target is a document. A query is scored against documents by Jaccard
+ * similarity of their trigram sets, and each target takes the score of its
+ * best-matching document. Targets scoring under half the best one are not
+ * worth offering and are left out.
+ * <p>
+ * Candidates are only gathered from the query's rarest trigrams, for as
+ * long as a document missing all of them could still make the top k, so
+ * the common trigrams with long posting lists are rarely walked. Each
+ * candidate that could still qualify is then scored exactly by looking its
+ * trigram ids up in the query's.
+ */
+public class SuggestionIndex {
+
+  private static final int COMPACT_MIN_DEAD = 1024;
+  // Candidates scored exactly, per suggestion wanted, to raise the threshold
+  private static final int CANDIDATES_PER_BOUND = 8;
+  // Suggestions must score at least this fraction of the best one
+  private static final double RELATIVE_CUTOFF = 0.5;
+  private static final double EPSILON = 1e-9;
+
+  /**
+   * Ascending ids of the documents containing one trigram
+   */
+  private static class Postings {
+    final int gramId;
+    int[] ids = new int[4];
+    int size;
+
+    Postings(int gramId) {
+      this.gramId = gramId;
+    }
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+  }
+
+  /**
+   * Per-batch counters indexed by document id, reset after every query
+   */
+  private static class Scratch {
+    final int[] counts;
+    int[] touched = new int[256];
+    int touchedSize;
+
+    // Best score and document per target, at the target's document id
+    final double[] bestScores;
+    final int[] bestDocs;
+    int[] scoredTargets = new int[64];
+    int scoredSize;
+
+    // Holds the current stamp at the query's trigram ids, so marking the
+    // next query never needs a clear
+    final int[] marks;
+    int stamp;
+
+    Scratch(int docs, int grams) {
+      counts = new int[docs];
+      bestScores = new double[docs];
+      bestDocs = new int[docs];
+      marks = new int[grams];
+    }
+
+    void mark(Postings[] lists, int present) {
+      stamp++;
+      for (int i = 0; i < present; i++) {
+        marks[lists[i].gramId] = stamp;
+      }
+    }
+
+    void hit(int id) {
+      if (counts[id]++ == 0) {
+        if (touchedSize == touched.length) {
+          touched = Arrays.copyOf(touched, touchedSize * 2);
+        }
+        touched[touchedSize++] = id;
+      }
+    }
+
+    void offer(int target, int id, double score) {
+      if (bestScores[target] == 0) {
+        if (scoredSize == scoredTargets.length) {
+          scoredTargets = Arrays.copyOf(scoredTargets, scoredSize * 2);
+        }
+        scoredTargets[scoredSize++] = target;
+      }
+      if (score > bestScores[target]) {
+        bestScores[target] = score;
+        bestDocs[target] = id;
+      }
+    }
+
+    void clearScores() {
+      for (int i = 0; i < scoredSize; i++) {
+        bestScores[scoredTargets[i]] = 0;
+      }
+      scoredSize = 0;
+    }
+  }
+
+  private final Map<Long, Postings> postings = new HashMap<>();
+
+  private String[] texts = new String[16];
+  // Null once the document has been removed
+  private String[] targets = new String[16];
+  // Id of the document for each document's target
+  private int[] targetOf = new int[16];
+  // Each document's trigram ids, end to end in one array
+  private int[] gramStarts = new int[16];
+  private int[] gramCounts = new int[16];
+  private int[] grams = new int[256];
+  private int gramsSize;
+  private int docCount;
+  private int deadCount;
+
+  private final Map<String, Integer> sourceDocs = new HashMap<>();
+  private final Map<String, Integer> targetDocs = new HashMap<>();
+  private final Map<String, Integer> targetRefs = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  public static SuggestionIndex build(Map<String, String> vocab) {
+    SuggestionIndex index = new SuggestionIndex();
+    for (Map.Entry<String, String> e : vocab.entrySet()) {
+      index.put(e.getKey(), e.getValue());
+    }
+    return index;
+  }
+
+  // ========== QUERIES ==========
+
+  /**
+   * Up to k targets scoring at least minScore against each query, best first
+   */
+  public List<List<MappingSuggestion>> suggestAll(List<String> queries, int k, double minScore) {
+    lock.readLock().lock();
+    try {
+      Scratch scratch = new Scratch(docCount, postings.size());
+      List<List<MappingSuggestion>> results = new ArrayList<>(queries.size());
+      for (String query : queries) {
+        results.add(suggest(scratch, query, k, minScore));
+      }
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public List<MappingSuggestion> suggest(String query, int k, double minScore) {
+    return suggestAll(List.of(query), k, minScore).get(0);
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return docCount - deadCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<MappingSuggestion> suggest(Scratch scratch, String query, int k, double minScore) {
+    long[] queryGrams = trigrams(query);
+    if (queryGrams.length == 0 || k <= 0) {
+      return List.of();
+    }
+    int q = queryGrams.length;
+
+    // Trigrams no document has cannot be shared, so only the others count
+    Postings[] lists = new Postings[q];
+    int present = 0;
+    for (long gram : queryGrams) {
+      Postings list = postings.get(gram);
+      if (list != null) {
+        lists[present++] = list;
+      }
+    }
+    scratch.mark(lists, present);
+    Arrays.sort(lists, 0, present, Comparator.comparingInt(p -> p.size));
+
+    // A document first seen after the lists scanned so far shares at most
+    // the remaining trigrams, and Jaccard c / (q + d - c) never exceeds
+    // c / q, so once the remaining lists fall below threshold * q no new
+    // candidate can qualify. The threshold starts at minScore and rises as
+    // good enough targets turn up.
+    double threshold = minScore;
+    int scanned = 0;
+    int boundAt = 0;
+    while (scanned < present && present - scanned >= threshold * q - EPSILON) {
+      // Worth re-estimating before a list longer than the candidates so far,
+      // once the candidates have at least doubled since the last estimate
+      if (scratch.touchedSize >= 2 * boundAt + 1) {
+        boundAt = scratch.touchedSize;
+        threshold = Math.max(threshold, thresholdLowerBound(scratch, q, k));
+        if (present - scanned < threshold * q - EPSILON) {
+          break;
+        }
+      }
+      Postings list = lists[scanned++];
+      for (int j = 0; j < list.size; j++) {
+        scratch.hit(list.ids[j]);
+      }
+    }
+
+    int left = present - scanned;
+    for (int c = 0; c < scratch.touchedSize; c++) {
+      int id = scratch.touched[c];
+      int partial = scratch.counts[id];
+      scratch.counts[id] = 0;
+      // Skip the merge when even every unscanned trigram could not lift it
+      // past the threshold, or past its target's best document so far
+      int d = gramCounts[id];
+      double upper = jaccard(Math.min(partial + left, d), q, d);
+      if (upper < threshold - EPSILON) {
+        continue;
+      }
+      if (targets[id] == null) {
+        continue;
+      }
+      int target = targetOf[id];
+      double current = scratch.bestScores[target];
+      if (upper <= current) {
+        continue;
+      }
+      double score = jaccard(shared(scratch, id), q, d);
+      if (score < threshold - EPSILON || score <= current) {
+        continue;
+      }
+      scratch.offer(target, id, score);
+      // The best target can only score higher from here
+      threshold = Math.max(threshold, score * RELATIVE_CUTOFF);
+    }
+    scratch.touchedSize = 0;
+
+    List<MappingSuggestion> ranked = new ArrayList<>(scratch.scoredSize);
+    for (int i = 0; i < scratch.scoredSize; i++) {
+      int target = scratch.scoredTargets[i];
+      ranked.add(new MappingSuggestion(texts[target], texts[scratch.bestDocs[target]], scratch.bestScores[target]));
+    }
+    scratch.clearScores();
+    ranked.sort(Comparator.comparingDouble(MappingSuggestion::getScore).reversed()
+        .thenComparing(MappingSuggestion::getTarget));
+    int count = 0;
+    while (count < ranked.size() && count < k
+        && ranked.get(count).getScore() >= ranked.get(0).getScore() * RELATIVE_CUTOFF - EPSILON) {
+      count++;
+    }
+    return new ArrayList<>(ranked.subList(0, count));
+  }
+
+  /**
+   * Scores the candidates sharing the most trigrams so far exactly. The
+   * final k-th best target can only score higher than the k-th best among
+   * them (0 if they cover fewer than k targets), and the final best target
+   * than their best, so no document scoring below either can be suggested.
+   */
+  private double thresholdLowerBound(Scratch scratch, int q, int k) {
+    // Bucket the candidates by partial count and take them from the top
+    int[] buckets = new int[q + 2];
+    for (int c = 0; c < scratch.touchedSize; c++) {
+      buckets[scratch.counts[scratch.touched[c]]]++;
+    }
+    int wanted = CANDIDATES_PER_BOUND * k;
+    int cutoff = q + 1;
+    for (int taken = 0; taken < wanted && cutoff > 1; ) {
+      taken += buckets[--cutoff];
+    }
+
+    int scored = 0;
+    for (int c = 0; c < scratch.touchedSize && scored < wanted; c++) {
+      int id = scratch.touched[c];
+      if (scratch.counts[id] < cutoff || targets[id] == null) {
+        continue;
+      }
+      scratch.offer(targetOf[id], id, jaccard(shared(scratch, id), q, gramCounts[id]));
+      scored++;
+    }
+    if (scratch.scoredSize == 0) {
+      return 0;
+    }
+    double[] scores = new double[scratch.scoredSize];
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] = scratch.bestScores[scratch.scoredTargets[i]];
+    }
+    scratch.clearScores();
+    Arrays.sort(scores);
+    double kth = scores.length < k ? 0 : scores[scores.length - k];
+    return Math.max(kth, scores[scores.length - 1] * RELATIVE_CUTOFF);
+  }
+
+  /**
+   * Trigrams the document shares with the query, by looking each of its
+   * trigram ids up in the query's marks
+   */
+  private int shared(Scratch scratch, int id) {
+    int[] marks = scratch.marks;
+    int stamp = scratch.stamp;
+    int shared = 0;
+    for (int i = gramStarts[id], end = i + gramCounts[id]; i < end; i++) {
+      if (marks[grams[i]] == stamp) {
+        shared++;
+      }
+    }
+    return shared;
+  }
+
+  private static double jaccard(int shared, int q, int d) {
+    return shared / (double) (q + d - shared);
+  }
+
+  // ========== UPDATES ==========
+
+  /**
+   * Map source to target, or drop it if target is blank
+   */
+  public void put(String source, String target) {
+    lock.writeLock().lock();
+    try {
+      if (isBlank(target)) {
+        removeSource(source);
+      } else {
+        Integer id = sourceDocs.get(source);
+        if (id == null) {
+          retain(target);
+          sourceDocs.put(source, addDoc(source, target));
+        } else if (!target.equals(targets[id])) {
+          String old = targets[id];
+          retain(target);
+          targets[id] = target;
+          targetOf[id] = targetDocs.get(target);
+          release(old);
+        }
+      }
+      compactIfSparse();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(String source) {
+    lock.writeLock().lock();
+    try {
+      removeSource(source);
+      compactIfSparse();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void removeSource(String source) {
+    Integer id = sourceDocs.remove(source);
+    if (id != null) {
+      String old = targets[id];
+      kill(id);
+      release(old);
+    }
+  }
+
+  private void retain(String target) {
+    if (targetRefs.merge(target, 1, Integer::sum) == 1) {
+      targetDocs.put(target, docCount);
+      addDoc(target, target);
+    }
+  }
+
+  private void release(String target) {
+    if (targetRefs.merge(target, -1, Integer::sum) == 0) {
+      targetRefs.remove(target);
+      kill(targetDocs.remove(target));
+    }
+  }
+
+  private int addDoc(String text, String target) {
+    if (docCount == texts.length) {
+      int capacity = docCount * 2;
+      texts = Arrays.copyOf(texts, capacity);
+      targets = Arrays.copyOf(targets, capacity);
+      gramStarts = Arrays.copyOf(gramStarts, capacity);
+      gramCounts = Arrays.copyOf(gramCounts, capacity);
+      targetOf = Arrays.copyOf(targetOf, capacity);
+    }
+    // Ids only grow, so every posting list stays sorted
+    int id = docCount++;
+    long[] textGrams = trigrams(text);
+    if (gramsSize + textGrams.length > grams.length) {
+      grams = Arrays.copyOf(grams, Math.max(grams.length * 2, gramsSize + textGrams.length));
+    }
+    texts[id] = text;
+    targets[id] = target;
+    // A target's own document is added first, so its id is already known
+    targetOf[id] = targetDocs.get(target);
+    gramStarts[id] = gramsSize;
+    gramCounts[id] = textGrams.length;
+    for (long gram : textGrams) {
+      Postings list = postings.computeIfAbsent(gram, g -> new Postings(postings.size()));
+      list.add(id);
+      grams[gramsSize++] = list.gramId;
+    }
+    return id;
+  }
+
+  private void kill(int id) {
+    targets[id] = null;
+    deadCount++;
+  }
+
+  /**
+   * Removed documents stay in the posting lists, ignored, until they make
+   * up half the index; then everything live is re-indexed
+   */
+  private void compactIfSparse() {
+    if (deadCount < COMPACT_MIN_DEAD || deadCount * 2 <= docCount) {
+      return;
+    }
+    Map<String, String> live = new HashMap<>();
+    for (Map.Entry<String, Integer> e : sourceDocs.entrySet()) {
+      live.put(e.getKey(), targets[e.getValue()]);
+    }
+    postings.clear();
+    sourceDocs.clear();
+    targetDocs.clear();
+    targetRefs.clear();
+    Arrays.fill(texts, 0, docCount, null);
+    Arrays.fill(targets, 0, docCount, null);
+    docCount = 0;
+    deadCount = 0;
+    gramsSize = 0;
+    for (Map.Entry<String, String> e : live.entrySet()) {
+      retain(e.getValue());
+      sourceDocs.put(e.getKey(), addDoc(e.getKey(), e.getValue()));
+    }
+  }
+
+  // ========== TRIGRAMS ==========
+
+  /**
+   * Distinct trigrams of the text, sorted, each packed into a long. Letters
+   * are lower-cased, runs of anything else become one space, and the text
+   * is padded with a space at each end so short codes still have trigrams.
+   */
+  static long[] trigrams(String text) {
+    if (text == null) {
+      return new long[0];
+    }
+    StringBuilder norm = new StringBuilder(text.length() + 2).append(' ');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        norm.append(Character.toLowerCase(c));
+      } else if (norm.charAt(norm.length() - 1) != ' ') {
+        norm.append(' ');
+      }
+    }
+    if (norm.charAt(norm.length() - 1) != ' ') {
+      norm.append(' ');
+    }
+    if (norm.length() < 3) {
+      return new long[0];
+    }
+
+    long[] grams = new long[norm.length() - 2];
+    for (int i = 0; i < grams.length; i++) {
+      long packed = ((long) norm.charAt(i) << 32) | ((long) norm.charAt(i + 1) << 16) | norm.charAt(i + 2);
+      // Multiplying by an odd constant keeps grams distinct and spreads them
+      // over Long.hashCode's folded bits, which the raw packing collides in
+      grams[i] = packed * 0x9E3779B97F4A7C15L;
+    }
+    Arrays.sort(grams);
+    int distinct = 0;
+    for (int i = 0; i < grams.length; i++) {
+      if (i == 0 || grams[i] != grams[i - 1]) {
+        grams[distinct++] = grams[i];
+      }
+    }
+    return Arrays.copyOf(grams, distinct);
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.isBlank();
+  }
+}
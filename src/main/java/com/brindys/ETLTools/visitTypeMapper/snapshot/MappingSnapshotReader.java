@@ -0,0 +1,191 @@
+package com.brindys.ETLTools.visitTypeMapper.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary mapping snapshot, as written by {@link MappingSnapshotWriter}
+ * and served from /api/mappings/snapshot, straight out of a memory-mapped
+ * file. Opening only checks the header, so a worker starts instantly however
+ * big the tables are, and every process mapping the same file shares one copy
+ * in the page cache. Lookups binary-search the UTF-8 keys in place; only the
+ * value found is decoded. Depends on nothing but the JDK, so ETL workers can
+ * take this one class. Safe for concurrent use.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ *   header  int magic "VTMS", int version, long revision,
+ *           int vocab table offset, int hierarchy table offset, int file length
+ *   table   int count n, int[2n + 1] offsets into the table's string heap,
+ *           then the heap: n keys sorted by unsigned UTF-8 bytes, followed
+ *           by their n values in the same order
+ * </pre>
+ * Key i spans offsets i to i + 1 of the heap and its value spans offsets
+ * n + i to n + i + 1.
+ */
+public final class MappingSnapshotReader {
+
+  static final int MAGIC = 0x56544D53;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 28;
+
+  /**
+   * One sorted table - source visit type to target or parent
+   */
+  public static final class Table {
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int offsets;
+    private final int heap;
+
+    private Table(ByteBuffer buffer, int start) throws IOException {
+      this.buffer = buffer;
+      if (start < HEADER_SIZE || start > buffer.limit() - 4) {
+        throw new IOException("Mapping snapshot table offset out of range: " + start);
+      }
+      count = buffer.getInt(start);
+      offsets = start + 4;
+      long heapStart = offsets + 4L * (2L * count + 1);
+      if (count < 0 || heapStart > buffer.limit()
+          || heapStart + buffer.getInt(offsets + 8 * count) > buffer.limit()) {
+        throw new IOException("Mapping snapshot table is truncated");
+      }
+      heap = (int) heapStart;
+    }
+
+    public int size() {
+      return count;
+    }
+
+    /**
+     * Position of the source in the table, or -1 if it is not mapped
+     */
+    public int find(String source) {
+      if (source == null) {
+        return -1;
+      }
+      byte[] key = source.getBytes(StandardCharsets.UTF_8);
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compare(mid, key);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Target or parent of the source, or null if it is not mapped
+     */
+    public String get(String source) {
+      int i = find(source);
+      return i < 0 ? null : value(i);
+    }
+
+    public String key(int i) {
+      return string(i);
+    }
+
+    public String value(int i) {
+      return string(count + i);
+    }
+
+    private int start(int slot) {
+      return heap + buffer.getInt(offsets + 4 * slot);
+    }
+
+    private String string(int slot) {
+      if (slot < 0 || slot >= 2 * count) {
+        throw new IndexOutOfBoundsException(slot);
+      }
+      int start = start(slot);
+      byte[] bytes = new byte[start(slot + 1) - start];
+      buffer.get(start, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares key i with the given bytes, unsigned byte by byte as the
+     * writer sorted them
+     */
+    private int compare(int i, byte[] key) {
+      int start = start(i);
+      int length = start(i + 1) - start;
+      int shared = Math.min(length, key.length);
+      for (int j = 0; j < shared; j++) {
+        int cmp = Byte.compareUnsigned(buffer.get(start + j), key[j]);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return Integer.compare(length, key.length);
+    }
+  }
+
+  private final long revision;
+  private final Table vocab;
+  private final Table hierarchy;
+
+  private MappingSnapshotReader(ByteBuffer buffer) throws IOException {
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a mapping snapshot");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported mapping snapshot version " + buffer.getInt(4));
+    }
+    if (buffer.getInt(24) != buffer.limit()) {
+      throw new IOException("Mapping snapshot is " + buffer.limit() + " bytes, expected " + buffer.getInt(24));
+    }
+    revision = buffer.getLong(8);
+    vocab = new Table(buffer, buffer.getInt(16));
+    hierarchy = new Table(buffer, buffer.getInt(20));
+  }
+
+  /**
+   * Maps the file read-only. The mapping outlives the channel and is
+   * released when the reader is garbage collected.
+   */
+  public static MappingSnapshotReader open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Mapping snapshot too large: " + channel.size() + " bytes");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new MappingSnapshotReader(buffer);
+    }
+  }
+
+  /**
+   * Reads a snapshot already in memory, e.g. a downloaded byte array
+   */
+  public static MappingSnapshotReader wrap(ByteBuffer buffer) throws IOException {
+    return new MappingSnapshotReader(buffer.slice());
+  }
+
+  /**
+   * Server revision the snapshot was exported at
+   */
+  public long revision() {
+    return revision;
+  }
+
+  public Table vocab() {
+    return vocab;
+  }
+
+  public Table hierarchy() {
+    return hierarchy;
+  }
+}
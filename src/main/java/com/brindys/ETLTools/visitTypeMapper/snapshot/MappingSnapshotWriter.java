@@ -0,0 +1,101 @@
+package com.brindys.ETLTools.visitTypeMapper.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes both mapping tables in the binary layout described on
+ * {@link MappingSnapshotReader}
+ */
+public final class MappingSnapshotWriter {
+
+  /**
+   * One table's keys and values as UTF-8, sorted by key bytes
+   */
+  private static final class EncodedTable {
+    final byte[][] keys;
+    final byte[][] values;
+    final long heapSize;
+
+    EncodedTable(Map<String, String> mappings) {
+      int n = mappings.size();
+      byte[][][] entries = new byte[n][][];
+      int i = 0;
+      for (Map.Entry<String, String> e : mappings.entrySet()) {
+        String value = e.getValue() != null ? e.getValue() : "";
+        entries[i++] = new byte[][] {
+            e.getKey().getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)};
+      }
+      Arrays.sort(entries, (a, b) -> Arrays.compareUnsigned(a[0], b[0]));
+
+      keys = new byte[n][];
+      values = new byte[n][];
+      long size = 0;
+      for (i = 0; i < n; i++) {
+        keys[i] = entries[i][0];
+        values[i] = entries[i][1];
+        size += keys[i].length + values[i].length;
+      }
+      heapSize = size;
+    }
+
+    long byteSize() {
+      return 4 + 4L * (2L * keys.length + 1) + heapSize;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(keys.length);
+      int offset = 0;
+      for (byte[] key : keys) {
+        out.writeInt(offset);
+        offset += key.length;
+      }
+      for (byte[] value : values) {
+        out.writeInt(offset);
+        offset += value.length;
+      }
+      out.writeInt(offset);
+      for (byte[] key : keys) {
+        out.write(key);
+      }
+      for (byte[] value : values) {
+        out.write(value);
+      }
+    }
+  }
+
+  private MappingSnapshotWriter() {
+  }
+
+  /**
+   * Writes the snapshot and flushes, leaving the stream open
+   */
+  public static void write(long revision, Map<String, String> vocab, Map<String, String> hierarchy,
+                           OutputStream out) throws IOException {
+    EncodedTable vocabTable = new EncodedTable(vocab);
+    EncodedTable hierarchyTable = new EncodedTable(hierarchy);
+    long vocabOffset = MappingSnapshotReader.HEADER_SIZE;
+    long hierarchyOffset = vocabOffset + vocabTable.byteSize();
+    long length = hierarchyOffset + hierarchyTable.byteSize();
+    // Offsets are ints, as is the most a single mapped buffer can hold
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Mappings too large for one snapshot: " + length + " bytes");
+    }
+
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    data.writeInt(MappingSnapshotReader.MAGIC);
+    data.writeInt(MappingSnapshotReader.VERSION);
+    data.writeLong(revision);
+    data.writeInt((int) vocabOffset);
+    data.writeInt((int) hierarchyOffset);
+    data.writeInt((int) length);
+    vocabTable.writeTo(data);
+    hierarchyTable.writeTo(data);
+    data.flush();
+  }
+}
@@ -0,0 +1,188 @@
+package test.com.brindys.deTools.configFormatter;
+
+import com.brindys.ETLTools.configFormatter.model.FormatCheckResult;
+import com.brindys.ETLTools.configFormatter.model.TextEdit;
+import com.brindys.ETLTools.configFormatter.service.ConfigFormatterService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConfigFormatterServiceTest {
+
+  private ConfigFormatterService service;
+
+  @BeforeEach
+  public void setUp() {
+    service = new ConfigFormatterService();
+  }
+
+  @Test
+  public void testIdenticalBlocksAreAllRestored() {
+    String variable = "VARIABLE DATA_SCHEMA {atropos.pre_transformed}\n";
+    String config = variable + connection(1, "select a from t") + variable + connection(2, "select a from t");
+
+    String formatted = service.formatConfig(config);
+
+    assertFalse(formatted.contains("PLACEHOLDER"));
+    assertEquals(2, count(formatted, "VARIABLE DATA_SCHEMA {atropos.pre_transformed}"));
+    assertEquals(2, count(formatted, "QUERY = SELECT"));
+  }
+
+  @Test
+  public void testPlaceholderIndexesDoNotClash() {
+    StringBuilder config = new StringBuilder();
+    for (int i = 0; i < 12; i++) {
+      config.append(connection(i, "select col_" + i + " from t"));
+    }
+
+    String formatted = service.formatConfig(config.toString());
+
+    // SQL_PLACEHOLDER_1 must not swallow the start of SQL_PLACEHOLDER_10
+    for (int i = 0; i < 12; i++) {
+      assertEquals(1, count(formatted, "col_" + i + "\n"), "query " + i);
+    }
+  }
+
+  @Test
+  public void testHierarchySectionIsUntouched() {
+    String hier = "#-----hier-----\nHIERARCHY X {\n  A=  B\n  VARIABLE Y {z}\n}";
+    String config = connection(1, "select a from t") + hier;
+
+    String formatted = service.formatConfig(config);
+
+    assertTrue(formatted.endsWith(hier));
+  }
+
+  @Test
+  public void testManySqlBlocksFormatInLinearTime() {
+    StringBuilder config = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      config.append(connection(i, "select a, b, c from $DATA_SCHEMA.t" + i + " where x = " + i));
+    }
+
+    String formatted = assertTimeoutPreemptively(Duration.ofSeconds(10),
+        () -> service.formatConfig(config.toString()));
+
+    assertEquals(2000, count(formatted, "QUERY = SELECT"));
+  }
+
+  @Test
+  public void testParallelFormattingMatchesSequential() {
+    StringBuilder config = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      StringBuilder query = new StringBuilder("select id");
+      for (int col = 0; col < 50; col++) {
+        query.append(", case when c").append(col).append(" = ").append(i).append(" then 1 else 0 end as f").append(col);
+      }
+      query.append(" from $DATA_SCHEMA.t").append(i).append(" where x = ").append(i).append(" and y = 1");
+
+      String connection = connection(i, query.toString());
+      config.append(connection);
+      // A single block is always formatted on the calling thread. Use a separate
+      // service so the blocks are not already cached for the combined run.
+      expected.append(new ConfigFormatterService().formatConfig(connection)).append("\n\n");
+    }
+
+    assertEquals(expected.toString().trim(), service.formatConfig(config.toString()));
+  }
+
+  @Test
+  public void testBlankLineBeforeClosingBraceIsKept() {
+    String config = "SCHEMA A {\n    X\n\n}\n\nSCHEMA B {\n    Y }\n";
+
+    String formatted = service.formatConfig(config);
+
+    // A brace on its own line stays put; only one trailing a value is moved
+    assertTrue(formatted.startsWith("SCHEMA A {\n    X\n\n}\n"), formatted);
+    assertTrue(formatted.endsWith("SCHEMA B {\n    Y\n}"), formatted);
+  }
+
+  @Test
+  public void testFormattedConfigTakesFastPath() {
+    String config = connection(1, "select a, b from t where x = 1") + "SCHEMA A {\nX\n}\n";
+
+    String formatted = service.formatConfig(config);
+
+    assertFalse(service.isFormatted(config));
+    assertTrue(service.isFormatted(formatted));
+    // Recognised by fingerprint and handed straight back
+    assertSame(formatted, service.formatConfig(formatted));
+    assertTrue(new ConfigFormatterService().isFormatted(formatted));
+  }
+
+  @Test
+  public void testStreamingMatchesInMemoryFormatting() throws IOException {
+    String config = "\n\nDATASET X {\nPRECISION=DAY\n\n}\n\n\n"
+        + "VARIABLE DATA_SCHEMA {atropos.pre_transformed}\n"
+        + connection(1, "select a, b from t where x = 1")
+        + "FEATURE ICD10, ICD10, STRING\n"
+        + "#-----hier-----\nHIERARCHY X {\n  A=  B\n\n\n}\n\n";
+
+    StringWriter streamed = new StringWriter();
+    service.formatConfig(new StringReader(config), streamed);
+
+    assertEquals(new ConfigFormatterService().formatConfig(config), streamed.toString());
+  }
+
+  @Test
+  public void testCheckModeReportsUnifiedDiff() {
+    String config = "SCHEMA A {\n    X\n}\n\nCONNECTION B FROM OPTUM {\n    CACHE=b\n}\n";
+
+    FormatCheckResult result = service.checkConfig(config, "configs/test.psl");
+
+    assertFalse(result.isFormatted());
+    assertEquals(String.join("\n",
+        "--- a/configs/test.psl",
+        "+++ b/configs/test.psl",
+        "@@ -3,5 +3,5 @@",
+        " }",
+        " ",
+        " CONNECTION B FROM OPTUM {",
+        "-    CACHE=b",
+        "+    CACHE = b",
+        " }",
+        ""), result.getDiff());
+
+    // The final newline of a file is not reported as a change
+    FormatCheckResult clean = service.checkConfig(service.formatConfig(config) + "\n", "configs/test.psl");
+    assertTrue(clean.isFormatted());
+    assertEquals("", clean.getDiff());
+  }
+
+  @Test
+  public void testFormatRangeOnlyEditsBlocksInRange() {
+    String config = "SCHEMA A {\n  X\n}\n\nCONNECTION B FROM OPTUM {\n  CACHE=b\n  QUERY = select a from t\n}\n\nSCHEMA C {\n  Y\n}\n";
+
+    List<TextEdit> edits = service.formatRange(config, 6, 6);
+
+    assertEquals(1, edits.size());
+    TextEdit edit = edits.get(0);
+    assertEquals(6, edit.getStartLine());
+    assertEquals(7, edit.getEndLine());
+
+    String applied = config.substring(0, edit.getStartOffset()) + edit.getNewText() + config.substring(edit.getEndOffset());
+    assertTrue(applied.startsWith("SCHEMA A {\n  X\n}"));
+    assertTrue(applied.contains("    CACHE = b\n    QUERY = SELECT\n"));
+    assertTrue(applied.endsWith("SCHEMA C {\n  Y\n}\n"));
+  }
+
+  private String connection(int i, String query) {
+    return "CONNECTION C" + i + " FROM OPTUM {\n  CACHE = c" + i + "\n  QUERY = " + query + "\n}\n\n";
+  }
+
+  private int count(String text, String part) {
+    int count = 0;
+    for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,145 @@
+package test.com.brindys.deTools.configFormatter;
+
+import com.brindys.ETLTools.configFormatter.service.ConfigFormatterService;
+import com.brindys.ETLTools.configFormatter.sql.SqlPrettyPrinter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqlPrettyPrinterTest {
+
+  private static final String BASE_INDENT = "        ";
+
+  private ConfigFormatterService service;
+
+  @BeforeEach
+  public void setUp() {
+    service = new ConfigFormatterService();
+  }
+
+  @Test
+  public void testSimpleQueryLayout() {
+    String formatted = format(
+        "select cast(person_id as string) as person_id, code from $DATA_SCHEMA.procedure p "
+            + "inner join $DATA_SCHEMA.atropos_concepts c on c.concept_code = p.code "
+            + "where left(person_id, 1) = '1' and c.vocabulary_id in ('CPT4', 'HCPCS')");
+
+    String expected = String.join("\n",
+        "SELECT",
+        "                CAST(person_id AS string) AS person_id,",
+        "                code",
+        "            FROM",
+        "                $DATA_SCHEMA.procedure p",
+        "            INNER JOIN $DATA_SCHEMA.atropos_concepts c",
+        "                ON",
+        "                    c.concept_code = p.code",
+        "            WHERE",
+        "                left(person_id, 1) = '1'",
+        "                AND c.vocabulary_id IN ('CPT4', 'HCPCS')");
+
+    assertEquals(expected, formatted);
+  }
+
+  @Test
+  public void testSubqueryAndOverLayout() {
+    String formatted = format(
+        "SELECT d.ptid from $DATA_SCHEMA.diag d LEFT JOIN ( SELECT encid, "
+            + "ROW_NUMBER() OVER ( PARTITION BY encid ORDER BY CASE WHEN role = 'A' THEN 1 ELSE 2 END, provid ) as rn "
+            + "FROM $DATA_SCHEMA.enc_prov ) e ON d.encid = e.encid AND e.rn = 1");
+
+    String expected = String.join("\n",
+        "SELECT",
+        "                d.ptid",
+        "            FROM",
+        "                $DATA_SCHEMA.diag d",
+        "            LEFT JOIN (",
+        "                SELECT",
+        "                    encid,",
+        "                    ROW_NUMBER()",
+        "                        OVER (",
+        "                            PARTITION BY encid",
+        "                            ORDER BY",
+        "                                CASE",
+        "                                    WHEN role = 'A' THEN 1",
+        "                                    ELSE 2",
+        "                                END,",
+        "                                provid",
+        "                        ) AS rn",
+        "                FROM",
+        "                    $DATA_SCHEMA.enc_prov",
+        "            ) e",
+        "                ON",
+        "                    d.encid = e.encid",
+        "                    AND e.rn = 1");
+
+    assertEquals(expected, formatted);
+  }
+
+  @Test
+  public void testBetweenAndIsNotSplit() {
+    String formatted = format("SELECT a FROM t WHERE a BETWEEN 1 AND 2 AND b = 'x and y'");
+
+    assertTrue(formatted.contains("a BETWEEN 1 AND 2\n"));
+    assertTrue(formatted.endsWith("AND b = 'x and y'"));
+  }
+
+  @Test
+  public void testFormattingIsIdempotent() {
+    String once = format(
+        "select a, case when x = 1 then 'a' else 'b' end as y from t where a in (select id from ids) order by a");
+    String twice = format(once);
+
+    assertEquals(once, twice);
+  }
+
+  @Test
+  public void testLargeQueryFormatsInLinearTime() {
+    String small = service.flattenQuery(wideQuery(100_000));
+    String large = service.flattenQuery(wideQuery(1_000_000));
+
+    String formatted = assertTimeoutPreemptively(Duration.ofSeconds(10),
+        () -> SqlPrettyPrinter.format(large, BASE_INDENT));
+    assertTrue(formatted.startsWith("SELECT\n"));
+    assertTrue(formatted.endsWith("AND w.b = 2"));
+
+    // Ten times the input should take about ten times as long; quadratic
+    // formatting would take a hundred
+    long smallNanos = fastestFormat(small);
+    long largeNanos = fastestFormat(large);
+    assertTrue(largeNanos < 30 * Math.max(smallNanos, 1_000_000),
+        "Formatting " + large.length() + " chars took " + largeNanos / 1_000_000 + " ms, "
+            + small.length() + " chars took " + smallNanos / 1_000_000 + " ms");
+  }
+
+  private static String wideQuery(int length) {
+    StringBuilder query = new StringBuilder("SELECT ");
+    int i = 0;
+    while (query.length() < length) {
+      if (i > 0) query.append(", ");
+      query.append("CASE WHEN col_").append(i).append(" BETWEEN 1 AND 2 THEN coalesce(x_")
+          .append(i).append(", 0) ELSE 'n/a' END AS feature_").append(i);
+      i++;
+    }
+    return query.append(" FROM $DATA_SCHEMA.wide_table w LEFT JOIN (SELECT id FROM $DATA_SCHEMA.ids) d ON w.id = d.id")
+        .append(" WHERE w.a = 1 AND w.b = 2")
+        .toString();
+  }
+
+  // Best of three, so a GC pause or JIT compile does not skew one run
+  private static long fastestFormat(String query) {
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < 3; run++) {
+      long start = System.nanoTime();
+      SqlPrettyPrinter.format(query, BASE_INDENT);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  private String format(String query) {
+    return service.formatQuery(service.flattenQuery(query), BASE_INDENT);
+  }
+}
@@ -0,0 +1,114 @@
+package test.com.brindys.deTools.github;
+
+import com.brindys.ETLTools.config.GitHubConfig;
+import com.brindys.ETLTools.support.github.fake.FakeGitHubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContentUpdateResponse;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FakeGitHubServerTest {
+
+  private FakeGitHubServer server;
+  private Path cacheDir;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new FakeGitHubServer(0, "acme", "mappings", 0, 0, 5000, 3_600_000);
+    server.start();
+    cacheDir = Files.createTempDirectory("github-cache");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    server.stop();
+    try (var files = Files.list(cacheDir)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(cacheDir);
+  }
+
+  @Test
+  public void testCommitAndReadBack() throws IOException {
+    GitHub gitHub = GitHubConfig.build(server.getUrl(), "token", cacheDir, 500, 3, 10);
+    GHRepository repo = gitHub.getRepository("acme/mappings");
+
+    GHContentUpdateResponse response = repo.createContent()
+        .content("{\"vocab:ER\":\"EMERGENCY\"}")
+        .path("mappings/visit_type_mapping_1.json")
+        .branch("main")
+        .message("First")
+        .commit();
+    assertNotNull(response.getCommit().getSHA1());
+
+    String content = new String(repo.getFileContent("mappings/visit_type_mapping_1.json", "main")
+        .read().readAllBytes(), StandardCharsets.UTF_8);
+    assertEquals("{\"vocab:ER\":\"EMERGENCY\"}", content);
+  }
+
+  @Test
+  public void testRepeatedReadsAreServedFromCache() throws IOException {
+    GitHub gitHub = GitHubConfig.build(server.getUrl(), "token", cacheDir, 500, 3, 10);
+    GHRepository repo = gitHub.getRepository("acme/mappings");
+    repo.createContent()
+        .content("{}")
+        .path("mappings/visit_type_mapping_1.json")
+        .branch("main")
+        .message("First")
+        .commit();
+
+    for (int i = 0; i < 3; i++) {
+      String content = new String(repo.getFileContent("mappings/visit_type_mapping_1.json", "main")
+          .read().readAllBytes(), StandardCharsets.UTF_8);
+      assertEquals("{}", content);
+    }
+    assertEquals(2, server.getNotModifiedCount());
+
+    // A new client on the same cache directory revalidates instead of refetching
+    GitHub restarted = GitHubConfig.build(server.getUrl(), "token", cacheDir, 500, 3, 10);
+    restarted.getRepository("acme/mappings").getFileContent("mappings/visit_type_mapping_1.json", "main");
+    assertEquals(3, server.getNotModifiedCount());
+  }
+
+  @Test
+  public void testGetsAreRetriedThroughFailures() throws IOException {
+    FakeGitHubServer flaky = new FakeGitHubServer(0, "acme", "mappings", 0, 0.3, 5000, 3_600_000);
+    flaky.start();
+    try {
+      GitHub gitHub = GitHubConfig.build(flaky.getUrl(), "token", cacheDir, 500, 20, 1);
+      for (int i = 0; i < 20; i++) {
+        assertEquals("acme/mappings", gitHub.getRepository("acme/mappings").getFullName());
+      }
+      assertTrue(flaky.getRequestCount() > 20);
+    } finally {
+      flaky.stop();
+    }
+  }
+
+  @Test
+  public void testRateLimitIsWaitedOut() throws IOException {
+    FakeGitHubServer limited = new FakeGitHubServer(0, "acme", "mappings", 0, 0, 2, 1_500);
+    limited.start();
+    try {
+      // No pacing, so the third request runs into the limit and has to wait
+      GitHub gitHub = GitHubConfig.build(limited.getUrl(), "token", cacheDir, 0, 0, 10);
+      for (int i = 0; i < 4; i++) {
+        assertEquals("acme/mappings", gitHub.getRepository("acme/mappings").getFullName());
+      }
+      assertTrue(limited.getRequestCount() > 4);
+    } finally {
+      limited.stop();
+    }
+  }
+}
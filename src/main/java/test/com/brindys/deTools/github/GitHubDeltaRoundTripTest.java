@@ -0,0 +1,104 @@
+package test.com.brindys.deTools.github;
+
+import com.brindys.ETLTools.DeToolsApplication;
+import com.brindys.ETLTools.support.github.GitHubService;
+import com.brindys.ETLTools.support.github.dto.CommitRequest;
+import com.brindys.ETLTools.support.github.dto.CommitResponse;
+import com.brindys.ETLTools.support.github.fake.FakeGitHubServer;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingVersionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GitHubDeltaRoundTripTest {
+
+  private Path dir;
+  private ConfigurableApplicationContext context;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("github-round-trip");
+    context = new SpringApplicationBuilder(DeToolsApplication.class)
+        .web(WebApplicationType.NONE)
+        .logStartupInfo(false)
+        .run("--spring.datasource.url=jdbc:sqlite:" + dir.resolve("mappings.db"),
+            "--mapping.history.github-push=false",
+            "--github.token=test",
+            "--github.fake.enabled=true",
+            "--github.cache.dir=" + dir.resolve("github-cache"),
+            "--github.blob-store.dir=" + dir.resolve("github-blobs"),
+            "--github.history.initial-delay-ms=3600000");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    context.close();
+    try (var files = Files.walk(dir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public void testDeltaChainRestoresEachVersion() throws Exception {
+    MappingVersionStore store = context.getBean(MappingVersionStore.class);
+    GitHubService gitHub = context.getBean(GitHubService.class);
+
+    Map<String, String> mapping = new HashMap<>();
+    for (int i = 0; i < 20; i++) {
+      mapping.put("vocab:SRC_" + i, "TARGET_" + (i % 4));
+    }
+    long v1 = store.commit(mapping, "first", "test").getId();
+    mapping.put("vocab:SRC_1", "TARGET_9");
+    mapping.remove("vocab:SRC_2");
+    long v2 = store.commit(mapping, "second", "test").getId();
+    mapping.put("vocab:SRC_20", "TARGET_0");
+    mapping.remove("vocab:SRC_3");
+    long v3 = store.commit(mapping, "third", "test").getId();
+
+    List<String> files = new ArrayList<>();
+    CommitResponse full = gitHub.commitMapping(new CommitRequest(new HashMap<>(store.load(v1)), "first", "test"));
+    assertTrue(full.isSuccess(), full.getMessage());
+    assertTrue(full.getFilename().endsWith(".json") && !full.getFilename().endsWith(".delta.json"));
+    files.add(full.getFilename());
+    for (long[] step : new long[][] {{v1, v2}, {v2, v3}}) {
+      // File names are stamped to the second
+      Thread.sleep(1_100);
+      CommitResponse delta = gitHub.commitDelta(files.get(files.size() - 1), store.delta(step[0], step[1]),
+          "version " + step[1], "test");
+      assertTrue(delta.isSuccess(), delta.getMessage());
+      assertTrue(delta.getFilename().endsWith(".delta.json"));
+      files.add(delta.getFilename());
+    }
+
+    // Drop the copies kept at commit time, so every file is read back from GitHub
+    try (var blobs = Files.walk(dir.resolve("github-blobs"))) {
+      for (Path file : blobs.filter(Files::isRegularFile).toList()) {
+        Files.delete(file);
+      }
+    }
+    FakeGitHubServer server = context.getBean(FakeGitHubServer.class);
+    long requests = server.getRequestCount();
+
+    long[] versions = {v1, v2, v3};
+    for (int i = 0; i < versions.length; i++) {
+      assertEquals(store.load(versions[i]), gitHub.loadMapping(files.get(i)), files.get(i));
+    }
+    assertTrue(server.getRequestCount() > requests);
+  }
+}
@@ -0,0 +1,58 @@
+package test.com.brindys.deTools.github;
+
+import com.brindys.ETLTools.support.github.SnapshotBlobStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotBlobStoreTest {
+
+  // git hash-object of "hello"
+  private static final String HELLO_SHA = "b6fc4c620b67d95f953a5c1c1230aaab5db5a1b0";
+
+  private Path dir;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("blob-store");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    try (var files = Files.walk(dir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public void testStoresUnderGitBlobSha() throws IOException {
+    SnapshotBlobStore store = new SnapshotBlobStore(dir.toString());
+    assertNull(store.get(HELLO_SHA));
+
+    Path stored = store.put(HELLO_SHA, new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(stored, store.get(HELLO_SHA));
+    assertEquals("hello", Files.readString(stored));
+
+    // Survives a new store over the same directory
+    assertNotNull(new SnapshotBlobStore(dir.toString()).get(HELLO_SHA));
+  }
+
+  @Test
+  public void testRejectsContentNotMatchingSha() throws IOException {
+    SnapshotBlobStore store = new SnapshotBlobStore(dir.toString());
+    assertThrows(IOException.class,
+        () -> store.put(HELLO_SHA, new ByteArrayInputStream("goodbye".getBytes(StandardCharsets.UTF_8))));
+    assertNull(store.get(HELLO_SHA));
+  }
+}
@@ -0,0 +1,64 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.service.HierarchyClosure;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HierarchyClosureTest {
+
+  private static final Map<String, String> HIERARCHY = new LinkedHashMap<>();
+
+  static {
+    HIERARCHY.put("AMBULANCE - LAND", "AMBULANCE VISIT");
+    HIERARCHY.put("AMBULANCE - AIR", "AMBULANCE VISIT");
+    HIERARCHY.put("AMBULANCE VISIT", "EMERGENCY");
+    HIERARCHY.put("ER", "EMERGENCY");
+    HIERARCHY.put("EMERGENCY", "VISIT");
+    HIERARCHY.put("OFFICE", "");
+  }
+
+  @Test
+  public void testAncestorsDescendantsAndDepth() {
+    HierarchyClosure closure = HierarchyClosure.build(HIERARCHY);
+
+    assertEquals(List.of("AMBULANCE VISIT", "EMERGENCY", "VISIT"), closure.ancestors("AMBULANCE - AIR"));
+    assertEquals(List.of("AMBULANCE VISIT", "AMBULANCE - LAND", "AMBULANCE - AIR", "ER"),
+        closure.descendants("EMERGENCY"));
+    assertEquals(3, closure.depth("AMBULANCE - LAND"));
+    assertEquals(0, closure.depth("VISIT"));
+    assertEquals(0, closure.depth("OFFICE"));
+    assertTrue(closure.ancestors("OFFICE").isEmpty());
+  }
+
+  @Test
+  public void testCycleDetection() {
+    HierarchyClosure closure = HierarchyClosure.build(HIERARCHY);
+
+    assertEquals(List.of("VISIT", "AMBULANCE - LAND", "AMBULANCE VISIT", "EMERGENCY", "VISIT"),
+        closure.findCycle("VISIT", "AMBULANCE - LAND", Map.of()));
+    assertEquals(List.of("X", "X"), closure.findCycle("X", "X", Map.of()));
+    assertNull(closure.findCycle("ER", "AMBULANCE VISIT", Map.of()));
+
+    // Two edges that only loop together
+    assertNotNull(closure.findCycle(Map.of("VISIT", "NEW", "NEW", "ER")));
+    assertNull(closure.findCycle(Map.of("NEW", "ER", "OFFICE", "NEW")));
+    // A pending edge overrides the indexed one
+    assertNull(closure.findCycle("VISIT", "ER", Map.of("ER", "OFFICE")));
+  }
+
+  @Test
+  public void testBuildSkipsCyclicEdges() {
+    Map<String, String> cyclic = new LinkedHashMap<>(HIERARCHY);
+    cyclic.put("VISIT", "ER");
+
+    HierarchyClosure closure = HierarchyClosure.build(cyclic);
+
+    assertEquals(List.of("EMERGENCY", "VISIT"), closure.ancestors("ER"));
+    assertEquals(0, closure.depth("VISIT"));
+  }
+}
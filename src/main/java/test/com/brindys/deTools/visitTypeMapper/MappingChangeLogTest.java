@@ -0,0 +1,63 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.service.MappingChangeLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappingChangeLogTest {
+
+  @Test
+  public void testLatestChangePerKeyAfterSince() {
+    MappingChangeLog log = new MappingChangeLog(100);
+    log.reset(10);
+    log.record(11, false, Map.of("ER", "EMERGENCY", "OFFICE", "OUTPATIENT"), List.of());
+    log.record(12, true, Map.of("ER", "EMERGENCY"), List.of());
+    log.record(13, false, Map.of("ER", "ED"), List.of("OFFICE"));
+    log.record(14, false, Map.of("TELE", "VIRTUAL"), List.of());
+
+    Map<String, String> changed = new LinkedHashMap<>();
+    List<String> removed = new ArrayList<>();
+    assertTrue(log.collect(10, 13, false, changed, removed));
+    assertEquals(Map.of("ER", "ED"), changed);
+    assertEquals(List.of("OFFICE"), removed);
+
+    changed.clear();
+    removed.clear();
+    assertTrue(log.collect(13, 14, false, changed, removed));
+    assertEquals(Map.of("TELE", "VIRTUAL"), changed);
+    assertTrue(removed.isEmpty());
+
+    changed.clear();
+    assertTrue(log.collect(11, 14, true, changed, removed));
+    assertEquals(Map.of("ER", "EMERGENCY"), changed);
+  }
+
+  @Test
+  public void testOldRevisionsNeedFullCopy() {
+    MappingChangeLog log = new MappingChangeLog(2);
+    log.reset(10);
+    log.record(11, false, Map.of("A", "1"), List.of());
+    log.record(12, false, Map.of("B", "2"), List.of());
+    log.record(13, false, Map.of("C", "3"), List.of());
+
+    Map<String, String> changed = new LinkedHashMap<>();
+    List<String> removed = new ArrayList<>();
+    // The change at 11 was dropped, so only clients at 11 or later can catch up
+    assertFalse(log.collect(10, 13, false, changed, removed));
+    assertTrue(log.collect(11, 13, false, changed, removed));
+    assertEquals(Map.of("B", "2", "C", "3"), changed);
+
+    // A revision ahead of the snapshot comes from another server instance
+    assertFalse(log.collect(20, 13, false, changed, removed));
+
+    log.reset(30);
+    assertFalse(log.collect(13, 30, false, changed, removed));
+    assertEquals(0, log.size());
+  }
+}
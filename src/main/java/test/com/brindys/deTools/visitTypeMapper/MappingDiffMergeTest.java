@@ -0,0 +1,103 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.service.MappingDiffService;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappingDiffMergeTest {
+
+  private static List<String> diff(Map<String, String> before, Map<String, String> after) throws IOException {
+    List<String> changes = new ArrayList<>();
+    MappingDiffService.merge(sorted(before), sorted(after), new MappingDiffService.DiffListener() {
+      @Override
+      public void added(String key, String value) {
+        changes.add("+" + key + "=" + value);
+      }
+
+      @Override
+      public void removed(String key, String value) {
+        changes.add("-" + key + "=" + value);
+      }
+
+      @Override
+      public void changed(String key, String from, String to) {
+        changes.add("~" + key + "=" + from + ">" + to);
+      }
+    });
+    return changes;
+  }
+
+  private static Iterator<Map.Entry<String, String>> sorted(Map<String, String> mapping) {
+    Map<String, String> sorted = new TreeMap<>(MappingDiffService::compareKeys);
+    sorted.putAll(mapping);
+    return sorted.entrySet().iterator();
+  }
+
+  @Test
+  public void testAddedRemovedAndChangedInKeyOrder() throws IOException {
+    Map<String, String> before = Map.of(
+        "hierarchy:ER", "ACUTE",
+        "vocab:ER", "EMERGENCY",
+        "vocab:OP", "OUTPATIENT",
+        "vocab:X", "OLD");
+    Map<String, String> after = Map.of(
+        "hierarchy:ER", "ACUTE",
+        "hierarchy:OUTPATIENT", "AMBULATORY",
+        "vocab:ER", "EMERGENCY",
+        "vocab:X", "NEW");
+
+    assertEquals(List.of(
+        "+hierarchy:OUTPATIENT=AMBULATORY",
+        "-vocab:OP=OUTPATIENT",
+        "~vocab:X=OLD>NEW"), diff(before, after));
+  }
+
+  @Test
+  public void testEmptySides() throws IOException {
+    assertEquals(List.of("+vocab:A=1"), diff(Map.of(), Map.of("vocab:A", "1")));
+    assertEquals(List.of("-vocab:A=1"), diff(Map.of("vocab:A", "1"), Map.of()));
+    assertEquals(List.of(), diff(Map.of(), Map.of()));
+  }
+
+  @Test
+  public void testKeysCompareByCodePoint() {
+    // U+FF5E is a single char; U+1F600 is a surrogate pair, which
+    // String.compareTo puts first but UTF-8 byte order puts last
+    String bmp = "vocab:～";
+    String astral = "vocab:😀";
+    assertTrue(bmp.compareTo(astral) > 0);
+    assertTrue(MappingDiffService.compareKeys(bmp, astral) < 0);
+    assertTrue(MappingDiffService.compareKeys("vocab:A", "vocab:AB") < 0);
+    assertEquals(0, MappingDiffService.compareKeys("vocab:A", "vocab:A"));
+  }
+
+  @Test
+  public void testLargeMappingsDiffInOnePass() throws IOException {
+    Map<String, String> before = new TreeMap<>();
+    Map<String, String> after = new TreeMap<>();
+    for (int i = 0; i < 200_000; i++) {
+      before.put("vocab:SRC_" + i, "T" + (i % 50));
+      if (i % 1000 != 0) {
+        after.put("vocab:SRC_" + i, i % 777 == 0 ? "CHANGED" : "T" + (i % 50));
+      }
+    }
+    after.put("vocab:NEW", "T1");
+
+    List<String> changes = diff(before, after);
+    long added = changes.stream().filter(c -> c.startsWith("+")).count();
+    long removed = changes.stream().filter(c -> c.startsWith("-")).count();
+    long changed = changes.stream().filter(c -> c.startsWith("~")).count();
+    assertEquals(1, added);
+    assertEquals(200, removed);
+    assertEquals(before.keySet().stream()
+        .filter(k -> after.containsKey(k) && !after.get(k).equals(before.get(k))).count(), changed);
+  }
+}
@@ -0,0 +1,57 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.service.MappingRowReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappingRowReaderTest {
+
+  @Test
+  public void testTabSeparatedRows() throws IOException {
+    List<MappingRowReader.Row> rows = read("\uFEFFInpatient\tINPATIENT VISIT\r\n\n  Emergency , x\tEMERGENCY VISIT \nOther\n");
+
+    assertEquals(3, rows.size());
+    assertEquals(List.of("Inpatient", "INPATIENT VISIT"), rows.get(0).fields);
+    // Once tabs are the delimiter, commas are part of the value
+    assertEquals(List.of("Emergency , x", "EMERGENCY VISIT"), rows.get(1).fields);
+    assertEquals(3, rows.get(1).line);
+    assertEquals(List.of("Other"), rows.get(2).fields);
+  }
+
+  @Test
+  public void testQuotedCsvFields() throws IOException {
+    List<MappingRowReader.Row> rows = read("\"Office, \"\"new\"\"\",OFFICE VISIT\n\"Two\nlines\",X\nlast,Y");
+
+    assertEquals(3, rows.size());
+    assertEquals(List.of("Office, \"new\"", "OFFICE VISIT"), rows.get(0).fields);
+    assertEquals(List.of("Two\nlines", "X"), rows.get(1).fields);
+    assertEquals(4, rows.get(2).line);
+    assertEquals(List.of("last", "Y"), rows.get(2).fields);
+  }
+
+  @Test
+  public void testUnterminatedQuoteIsReported() throws IOException {
+    List<MappingRowReader.Row> rows = read("a,b\n\"broken,c\nd,e\n");
+
+    assertEquals(2, rows.size());
+    assertNull(rows.get(0).error);
+    assertEquals(2, rows.get(1).line);
+    assertEquals("Unterminated quoted field", rows.get(1).error);
+  }
+
+  private List<MappingRowReader.Row> read(String text) throws IOException {
+    List<MappingRowReader.Row> rows = new ArrayList<>();
+    try (MappingRowReader reader = new MappingRowReader(new StringReader(text))) {
+      for (MappingRowReader.Row row = reader.next(); row != null; row = reader.next()) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,64 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.snapshot.MappingSnapshotReader;
+import com.brindys.ETLTools.visitTypeMapper.snapshot.MappingSnapshotWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappingSnapshotTest {
+
+  @Test
+  public void testLookupsFromMappedFile() throws IOException {
+    Map<String, String> vocab = new HashMap<>();
+    for (int i = 0; i < 10_000; i++) {
+      vocab.put("SRC_" + i, "TARGET_" + (i % 37));
+    }
+    vocab.put("Notaufnahme - Ärztlich", "EMERGENCY");
+    vocab.put("UNMAPPED", "");
+    Map<String, String> hierarchy = Map.of("EMERGENCY", "ACUTE", "OUTPATIENT", "AMBULATORY");
+
+    Path file = Files.createTempFile("mappings", ".snapshot");
+    try {
+      try (OutputStream out = Files.newOutputStream(file)) {
+        MappingSnapshotWriter.write(42, vocab, hierarchy, out);
+      }
+      MappingSnapshotReader reader = MappingSnapshotReader.open(file);
+
+      assertEquals(42, reader.revision());
+      assertEquals(vocab.size(), reader.vocab().size());
+      for (Map.Entry<String, String> e : vocab.entrySet()) {
+        assertEquals(e.getValue(), reader.vocab().get(e.getKey()));
+      }
+      assertNull(reader.vocab().get("SRC_10000"));
+      assertNull(reader.vocab().get(""));
+      assertEquals("ACUTE", reader.hierarchy().get("EMERGENCY"));
+      assertNull(reader.hierarchy().get("SRC_1"));
+      assertEquals("AMBULATORY", reader.hierarchy().value(reader.hierarchy().find("OUTPATIENT")));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void testRejectsOtherFiles() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MappingSnapshotWriter.write(1, Map.of("A", "B"), Map.of(), out);
+    byte[] bytes = out.toByteArray();
+    assertEquals("B", MappingSnapshotReader.wrap(ByteBuffer.wrap(bytes)).vocab().get("A"));
+
+    assertThrows(IOException.class,
+        () -> MappingSnapshotReader.wrap(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    assertThrows(IOException.class,
+        () -> MappingSnapshotReader.wrap(ByteBuffer.wrap("{\"vocab_mappings\": {}}".getBytes())));
+  }
+}
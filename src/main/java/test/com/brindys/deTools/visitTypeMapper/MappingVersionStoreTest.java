@@ -0,0 +1,178 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.DeToolsApplication;
+import com.brindys.ETLTools.visitTypeMapper.model.MappingVersion;
+import com.brindys.ETLTools.visitTypeMapper.service.MappingVersionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappingVersionStoreTest {
+
+  private Path dir;
+  private ConfigurableApplicationContext context;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("mapping-versions");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    if (context != null) {
+      context.close();
+    }
+    try (var files = Files.walk(dir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public void testReplaysAcrossCheckpoints() {
+    MappingVersionStore store = start(3);
+    List<Map<String, String>> committed = commitSteps(store, 7);
+
+    List<MappingVersion> history = store.history();
+    assertEquals(7, history.size());
+    // A checkpoint every third version, deltas between
+    assertEquals(List.of(true, false, false, true, false, false, true),
+        history.stream()
+            .sorted(Comparator.comparing(MappingVersion::getId))
+            .map(MappingVersion::isCheckpoint)
+            .toList());
+    for (int v = 1; v <= 7; v++) {
+      assertEquals(committed.get(v - 1), store.load(v), "Version " + v);
+    }
+    assertNull(store.load(8));
+  }
+
+  @Test
+  public void testDeltaStopsAtCheckpoints() {
+    MappingVersionStore store = start(3);
+    List<Map<String, String>> committed = commitSteps(store, 6);
+
+    // Versions 2 and 3 are deltas on checkpoint 1
+    Map<String, String> delta = store.delta(1, 3);
+    Map<String, String> rebuilt = new HashMap<>(committed.get(0));
+    delta.forEach((key, value) -> {
+      if (value == null) {
+        rebuilt.remove(key);
+      } else {
+        rebuilt.put(key, value);
+      }
+    });
+    assertEquals(committed.get(2), rebuilt);
+    assertTrue(delta.containsKey("K3") && delta.get("K3") == null, "Removed key recorded as null");
+
+    // Version 4 is a checkpoint, which does not record what it dropped
+    assertNull(store.delta(3, 4));
+    assertNull(store.delta(2, 5));
+    assertEquals(Map.of("K10", "V5"), store.delta(4, 5));
+    assertEquals(Map.of(), store.delta(6, 6));
+  }
+
+  @Test
+  public void testCheckpointWhenMostKeysChange() {
+    MappingVersionStore store = start(50);
+    Map<String, String> mapping = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      mapping.put("K" + i, "A");
+    }
+    assertTrue(store.commit(mapping, "first", "test").isCheckpoint());
+
+    for (int i = 0; i < 5; i++) {
+      mapping.put("K" + i, "B");
+    }
+    MappingVersion half = store.commit(mapping, "half", "test");
+    assertFalse(half.isCheckpoint());
+    assertEquals(5, half.getChangeCount());
+
+    for (int i = 0; i < 6; i++) {
+      mapping.put("K" + i, "C");
+    }
+    MappingVersion most = store.commit(mapping, "most", "test");
+    assertTrue(most.isCheckpoint());
+    assertEquals(6, most.getChangeCount());
+    assertEquals(mapping, store.load(most.getId()));
+  }
+
+  @Test
+  public void testHeadRebuiltAfterRestart() {
+    List<Map<String, String>> committed = commitSteps(start(3), 5);
+    context.close();
+
+    MappingVersionStore store = start(3);
+    assertEquals(committed.get(4), store.load(5));
+
+    // One more key changed: stored as a one-key delta, so the rebuilt head
+    // matched version 5 and counted the delta since checkpoint 4
+    Map<String, String> next = new HashMap<>(committed.get(4));
+    next.put("K0", "V6");
+    MappingVersion saved = store.commit(next, "after restart", "test");
+    assertEquals(6L, saved.getId());
+    assertFalse(saved.isCheckpoint());
+    assertEquals(1, saved.getChangeCount());
+    assertEquals(Map.of("K0", "V6"), store.delta(5, 6));
+    assertEquals(next, store.load(6));
+
+    // The third delta since checkpoint 4 reaches the interval
+    next.put("K1", "V7");
+    assertTrue(store.commit(next, "checkpoint", "test").isCheckpoint());
+  }
+
+  /**
+   * Commits count versions of a ten-key mapping, each changing one key:
+   * version 3 removes K3, version 5 adds K10 and the others change the
+   * value of their own key. Returns what each version held.
+   */
+  private static List<Map<String, String>> commitSteps(MappingVersionStore store, int count) {
+    Map<String, String> mapping = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      mapping.put("K" + i, "V0");
+    }
+    List<Map<String, String>> committed = new ArrayList<>();
+    for (int v = 1; v <= count; v++) {
+      if (v == 3) {
+        mapping.remove("K3");
+      } else if (v == 5) {
+        mapping.put("K10", "V5");
+      } else if (v > 1) {
+        mapping.put("K" + v, "V" + v);
+      }
+      store.commit(mapping, "version " + v, "test");
+      committed.add(new HashMap<>(mapping));
+    }
+    return committed;
+  }
+
+  private MappingVersionStore start(int checkpointInterval) {
+    context = new SpringApplicationBuilder(DeToolsApplication.class)
+        .web(WebApplicationType.NONE)
+        .logStartupInfo(false)
+        .run("--spring.datasource.url=jdbc:sqlite:" + dir.resolve("mappings.db"),
+            "--mapping.history.checkpoint-interval=" + checkpointInterval,
+            "--mapping.history.github-push=false",
+            "--github.token=test",
+            "--github.fake.enabled=true",
+            "--github.cache.dir=" + dir.resolve("github-cache"),
+            "--github.blob-store.dir=" + dir.resolve("github-blobs"),
+            "--github.history.initial-delay-ms=3600000");
+    return context.getBean(MappingVersionStore.class);
+  }
+}
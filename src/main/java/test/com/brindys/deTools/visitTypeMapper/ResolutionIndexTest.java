@@ -0,0 +1,63 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.service.ResolutionIndex;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResolutionIndexTest {
+
+  @Test
+  public void testResolvesTargetAndParent() {
+    Map<String, String> vocab = Map.of("Inpatient", "INPATIENT VISIT", "Office", "OFFICE VISIT");
+    Map<String, String> hierarchy = Map.of("Inpatient", "HOSPITAL", "AMBULANCE - AIR", "AMBULANCE VISIT");
+
+    ResolutionIndex index = ResolutionIndex.build(vocab, hierarchy);
+
+    assertEquals(3, index.size());
+    int inpatient = index.find("Inpatient");
+    assertEquals("INPATIENT VISIT", index.target(inpatient));
+    assertEquals("HOSPITAL", index.parent(inpatient));
+    assertNull(index.parent(index.find("Office")));
+    assertNull(index.target(index.find("AMBULANCE - AIR")));
+    assertEquals(-1, index.find("Unknown"));
+    assertNull(index.target(index.find("Unknown")));
+  }
+
+  @Test
+  public void testLookupThroughput() {
+    Map<String, String> vocab = new HashMap<>();
+    Map<String, String> hierarchy = new HashMap<>();
+    for (int i = 0; i < 1_000_000; i++) {
+      vocab.put("SRC_" + i, "TGT_" + (i % 50));
+      if (i % 3 == 0) {
+        hierarchy.put("SRC_" + i, "PARENT_" + (i % 7));
+      }
+    }
+    ResolutionIndex index = ResolutionIndex.build(vocab, hierarchy);
+
+    String[] codes = new String[4_000_000];
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = "SRC_" + (i % 1_200_000);
+    }
+
+    // Four million lookups take well under a second; the timeout is a
+    // backstop, not a benchmark
+    int found = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      int hits = 0;
+      for (String code : codes) {
+        if (index.target(index.find(code)) != null) {
+          hits++;
+        }
+      }
+      return hits;
+    });
+
+    assertEquals(1_000_000, index.size());
+    assertEquals(3_400_000, found);
+  }
+}
@@ -0,0 +1,226 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.config.ReadWriteRoutingDataSource;
+import com.brindys.ETLTools.config.SqliteDataSourceConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqliteConcurrencyBenchmarkTest {
+
+  private static final int ROWS = 50_000;
+  private static final int READERS = 4;
+  private static final long READ_MILLIS = 1_000;
+
+  private Path dir;
+  private final List<HikariDataSource> pools = new ArrayList<>();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("sqlite-bench");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    pools.forEach(HikariDataSource::close);
+    try (var files = Files.list(dir)) {
+      for (Path file : files.toList()) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  @Test
+  public void testReadOnlyTransactionsUseReaderPool() {
+    String url = "jdbc:sqlite:" + dir.resolve("routing.db");
+    HikariDataSource writer = pool("writer", url, 1, false, "WAL");
+    HikariDataSource reader = pool("reader", url, 2, true, "WAL");
+    LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(writer, reader));
+    JdbcTemplate jdbc = new JdbcTemplate(routing);
+    TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(routing));
+
+    jdbc.execute("CREATE TABLE t (x INTEGER)");
+    assertEquals(Integer.valueOf(0), tx.execute(status -> jdbc.queryForObject("PRAGMA query_only", Integer.class)));
+
+    tx.setReadOnly(true);
+    assertEquals(Integer.valueOf(1), tx.execute(status -> jdbc.queryForObject("PRAGMA query_only", Integer.class)));
+    assertEquals("wal", tx.execute(status -> jdbc.queryForObject("PRAGMA journal_mode", String.class)));
+  }
+
+  @Test
+  public void testReadLatencyDuringBulkWrites() throws Exception {
+    String url = "jdbc:sqlite:" + dir.resolve("wal.db");
+    HikariDataSource writer = pool("writer", url, 1, false, "WAL");
+    HikariDataSource reader = pool("reader", url, READERS, true, "WAL");
+    populate(writer);
+
+    Latency idle = readAll(reader);
+
+    AtomicBoolean stop = new AtomicBoolean();
+    AtomicLong written = new AtomicLong();
+    Thread bulkWriter = new Thread(() -> bulkWrite(writer, stop, written));
+    bulkWriter.start();
+    while (written.get() == 0) {
+      Thread.sleep(1);
+    }
+    Latency busy;
+    try {
+      busy = readAll(reader);
+    } finally {
+      stop.set(true);
+      bulkWriter.join();
+    }
+
+    // In WAL mode a reader never waits for the writer's lock, so reads
+    // during bulk writes stay about as fast as reads with no writer
+    assertTrue(busy.p99Micros < Math.max(10 * idle.p99Micros, 1_000),
+        "Idle reads " + idle + ", reads during " + written.get() + " row writes " + busy);
+  }
+
+  private HikariDataSource pool(String name, String url, int size, boolean queryOnly, String journalMode) {
+    HikariDataSource pool = SqliteDataSourceConfig.createPool(name, url, size, queryOnly, journalMode, "NORMAL", 5000);
+    pools.add(pool);
+    return pool;
+  }
+
+  private void populate(HikariDataSource writer) throws SQLException {
+    try (Connection c = writer.getConnection()) {
+      c.createStatement().execute(
+          "CREATE TABLE vocab_mappings (source_visit_type TEXT PRIMARY KEY, target_visit_type TEXT)");
+      c.setAutoCommit(false);
+      try (PreparedStatement ps = c.prepareStatement("INSERT INTO vocab_mappings VALUES (?, ?)")) {
+        for (int i = 0; i < ROWS; i++) {
+          ps.setString(1, "SRC_" + i);
+          ps.setString(2, "TGT_" + (i % 50));
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      c.commit();
+      c.setAutoCommit(true);
+    }
+  }
+
+  /**
+   * Upsert batches back to back until told to stop, like a large import
+   */
+  private void bulkWrite(HikariDataSource writer, AtomicBoolean stop, AtomicLong written) {
+    String sql = "INSERT INTO vocab_mappings (source_visit_type, target_visit_type) VALUES (?, ?) "
+        + "ON CONFLICT(source_visit_type) DO UPDATE SET target_visit_type = excluded.target_visit_type";
+    int next = 0;
+    try (Connection c = writer.getConnection()) {
+      c.setAutoCommit(false);
+      while (!stop.get()) {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+          for (int i = 0; i < 50_000; i++, next++) {
+            ps.setString(1, "SRC_" + (next % (ROWS * 2)));
+            ps.setString(2, "NEW_" + next);
+            ps.addBatch();
+          }
+          ps.executeBatch();
+        }
+        c.commit();
+        written.addAndGet(50_000);
+      }
+      c.setAutoCommit(true);
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Latency readAll(HikariDataSource reader) throws InterruptedException {
+    long[][] samples = new long[READERS][];
+    Thread[] threads = new Thread[READERS];
+    List<Throwable> failures = new ArrayList<>();
+    for (int t = 0; t < READERS; t++) {
+      int index = t;
+      threads[t] = new Thread(() -> {
+        try {
+          samples[index] = read(reader);
+        } catch (Throwable e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(failures.isEmpty(), () -> "Reader failed: " + failures.get(0));
+    return Latency.of(samples);
+  }
+
+  /**
+   * Point lookups for READ_MILLIS, returning each one's latency
+   */
+  private long[] read(HikariDataSource reader) throws SQLException {
+    long[] micros = new long[1024];
+    int count = 0;
+    long end = System.nanoTime() + READ_MILLIS * 1_000_000;
+    try (Connection c = reader.getConnection();
+         PreparedStatement ps = c.prepareStatement(
+             "SELECT target_visit_type FROM vocab_mappings WHERE source_visit_type = ?")) {
+      for (long start = System.nanoTime(); start < end; start = System.nanoTime()) {
+        ps.setString(1, "SRC_" + ThreadLocalRandom.current().nextInt(ROWS));
+        try (ResultSet rs = ps.executeQuery()) {
+          rs.next();
+        }
+        if (count == micros.length) {
+          micros = Arrays.copyOf(micros, count * 2);
+        }
+        micros[count++] = (System.nanoTime() - start) / 1_000;
+      }
+    }
+    return Arrays.copyOf(micros, count);
+  }
+
+  private static class Latency {
+    final int count;
+    final long p50Micros;
+    final long p99Micros;
+    final long p999Micros;
+    final long maxMicros;
+
+    private Latency(long[] sorted) {
+      count = sorted.length;
+      p50Micros = sorted[sorted.length / 2];
+      p99Micros = sorted[(int) (sorted.length * 0.99)];
+      p999Micros = sorted[(int) (sorted.length * 0.999)];
+      maxMicros = sorted[sorted.length - 1];
+    }
+
+    static Latency of(long[][] samples) {
+      long[] all = Arrays.stream(samples).flatMapToLong(Arrays::stream).sorted().toArray();
+      return new Latency(all);
+    }
+
+    @Override
+    public String toString() {
+      return count + " reads, p50 " + p50Micros + "us / p99 " + p99Micros + "us / p99.9 " + p999Micros + "us / max " + maxMicros + "us";
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package test.com.brindys.deTools.visitTypeMapper;
+
+import com.brindys.ETLTools.visitTypeMapper.dto.MappingSuggestion;
+import com.brindys.ETLTools.visitTypeMapper.service.SuggestionIndex;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SuggestionIndexTest {
+
+  @Test
+  public void testSuggestsClosestTargets() {
+    Map<String, String> vocab = new HashMap<>();
+    vocab.put("EMERGENCY ROOM VISIT", "EMERGENCY");
+    vocab.put("ER - ADULT", "EMERGENCY");
+    vocab.put("OFFICE VISIT - NEW PATIENT", "OFFICE");
+    vocab.put("INPATIENT ADMISSION", "INPATIENT");
+    vocab.put("TELEHEALTH VIDEO", "");
+    SuggestionIndex index = SuggestionIndex.build(vocab);
+
+    List<MappingSuggestion> suggestions = index.suggest("Emergency Room Visit (Peds)", 3, 0.3);
+    assertEquals("EMERGENCY", suggestions.get(0).getTarget());
+    assertEquals("EMERGENCY ROOM VISIT", suggestions.get(0).getMatched());
+
+    assertEquals("OFFICE", index.suggest("office visit new pt", 3, 0.3).get(0).getTarget());
+    // Target names are indexed too
+    assertEquals("INPATIENT", index.suggest("inpatient", 3, 0.3).get(0).getTarget());
+    // Unmapped sources suggest nothing
+    assertTrue(index.suggest("telehealth video", 3, 0.3).isEmpty());
+    assertTrue(index.suggest("zzz", 3, 0.3).isEmpty());
+  }
+
+  @Test
+  public void testIncrementalUpdates() {
+    SuggestionIndex index = SuggestionIndex.build(Map.of("URGENT CARE CLINIC", "URGENT CARE"));
+    assertEquals("URGENT CARE", index.suggest("urgent care clinic 2", 1, 0.3).get(0).getTarget());
+
+    index.put("URGENT CARE CLINIC", "WALK IN");
+    List<MappingSuggestion> retargeted = index.suggest("urgent care clinic 2", 5, 0.3);
+    assertEquals("WALK IN", retargeted.get(0).getTarget());
+    assertTrue(retargeted.stream().noneMatch(s -> s.getTarget().equals("URGENT CARE")));
+
+    index.remove("URGENT CARE CLINIC");
+    assertTrue(index.suggest("urgent care clinic 2", 5, 0.3).isEmpty());
+    assertEquals(0, index.size());
+
+    // Enough churn to force a compaction, after which the live entries still match
+    for (int i = 0; i < 5000; i++) {
+      index.put("SOURCE " + i, "TARGET " + (i % 10));
+    }
+    for (int i = 0; i < 4000; i++) {
+      index.remove("SOURCE " + i);
+    }
+    assertEquals(1010, index.size());
+    assertEquals("TARGET 7", index.suggest("source 4567", 1, 0.3).get(0).getTarget());
+  }
+
+  @Test
+  public void testSuggestionThroughput() {
+    Random random = new Random(42);
+    // Made-up words standing in for departments, specialties and modifiers
+    String[] words = new String[600];
+    for (int i = 0; i < words.length; i++) {
+      StringBuilder word = new StringBuilder();
+      int length = 3 + random.nextInt(8);
+      for (int j = 0; j < length; j++) {
+        word.append((char) ('A' + random.nextInt(26)));
+      }
+      words[i] = word.toString();
+    }
+    String[] common = {"VISIT", "CLINIC", "HOSPITAL", "OUTPATIENT", "INPATIENT", "EMERGENCY", "-", "/"};
+
+    // 300 targets, each with sources that reuse some of its words
+    Map<String, String> vocab = new HashMap<>();
+    List<String[]> targetWords = new ArrayList<>();
+    for (int t = 0; t < 300; t++) {
+      targetWords.add(new String[] {words[random.nextInt(words.length)], words[random.nextInt(words.length)],
+          words[random.nextInt(words.length)]});
+    }
+    while (vocab.size() < 20_000) {
+      int t = random.nextInt(targetWords.size());
+      String[] own = targetWords.get(t);
+      String source = common[random.nextInt(common.length)] + " " + own[random.nextInt(3)] + " "
+          + own[random.nextInt(3)] + " " + words[random.nextInt(words.length)]
+          + (random.nextBoolean() ? " " + random.nextInt(100) : "");
+      vocab.put(source, "TARGET " + t);
+    }
+    SuggestionIndex index = SuggestionIndex.build(vocab);
+
+    // Sources seen in a new upload: existing ones lower-cased with a typo
+    List<String> sources = new ArrayList<>(vocab.keySet());
+    List<String> uploads = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      String source = sources.get(random.nextInt(sources.size()));
+      int at = random.nextInt(source.length());
+      uploads.add(source.substring(0, at).toLowerCase() + source.substring(at + 1).toLowerCase());
+      expected.add(vocab.get(source));
+    }
+
+    // Well under a second normally; the bound is loose enough not to trip
+    // on a busy machine
+    List<List<MappingSuggestion>> results = assertTimeoutPreemptively(Duration.ofSeconds(10),
+        () -> index.suggestAll(uploads, 5, 0.3));
+    int hits = 0;
+    for (int i = 0; i < results.size(); i++) {
+      String target = expected.get(i);
+      if (results.get(i).stream().anyMatch(s -> s.getTarget().equals(target))) {
+        hits++;
+      }
+    }
+
+    assertTrue(hits > 9_500, "Right target suggested for " + hits + " of " + uploads.size());
+  }
+}